@@ -0,0 +1,69 @@
+package com.company.bench;
+
+import com.company.CompiledScore;
+import com.company.NullSink;
+import com.company.OscillatorMode;
+import com.company.Score;
+import com.company.StdAudio;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders the whole anthem into a {@link NullSink}, sequentially and on the common
+ * fork/join pool. Scores are whole renders per second and the {@code samples} counter
+ * reports samples per second; run with {@code -prof gc} to see the allocation rate per
+ * operation.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Thread)
+public class AnthemRenderBenchmark {
+
+    @Param({"SINE", "WAVETABLE", "ROTATION", "POLYNOMIAL"})
+    public OscillatorMode mode;
+
+    private CompiledScore anthem;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        StdAudio.setSink(new NullSink());
+        StdAudio.setCache(null);
+        StdAudio.setOscillatorMode(mode);
+        anthem = Score.loadResource("anthem.score").compile(StdAudio.SAMPLE_RATE);
+    }
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Samples {
+        public long samples;
+    }
+
+    @Benchmark
+    public void sequential(Samples counter) {
+        StdAudio.play(anthem);
+        counter.samples += anthem.totalSamples();
+    }
+
+    @Benchmark
+    public void parallel(Samples counter) {
+        StdAudio.playParallel(anthem, ForkJoinPool.commonPool());
+        counter.samples += anthem.totalSamples();
+    }
+}
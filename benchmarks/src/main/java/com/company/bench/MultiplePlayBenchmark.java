@@ -0,0 +1,67 @@
+package com.company.bench;
+
+import com.company.NullSink;
+import com.company.OscillatorMode;
+import com.company.StdAudio;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+
+/**
+ * Throughput of {@link StdAudio#multiplePlay} into a {@link NullSink}, by number of
+ * voices, note duration and oscillator mode. The {@code samples} counter reports
+ * samples synthesized per second; one second of audio is 44,100 samples.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Thread)
+public class MultiplePlayBenchmark {
+
+    // The voicing of the opening chord, extended to six voices.
+    private static final double[] CHORD = {155.56, 311.13, 392.00, 466.16, 622.25, 783.99};
+
+    @Param({"1", "2", "3", "4", "5", "6"})
+    public int voices;
+
+    // Sixteenth triplet, eighth and dotted half at the anthem's tempo.
+    @Param({"0.138888", "0.416667", "2.5"})
+    public double duration;
+
+    @Param({"SINE", "WAVETABLE", "ROTATION", "POLYNOMIAL"})
+    public OscillatorMode mode;
+
+    private double[] hzs;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        StdAudio.setSink(new NullSink());
+        StdAudio.setCache(null);
+        StdAudio.setOscillatorMode(mode);
+        hzs = Arrays.copyOf(CHORD, voices);
+    }
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Samples {
+        public long samples;
+    }
+
+    @Benchmark
+    public void multiplePlay(Samples counter) {
+        StdAudio.multiplePlay(hzs, duration, 0.75);
+        counter.samples += (int) (StdAudio.SAMPLE_RATE * duration) + 1;
+    }
+}
@@ -0,0 +1,62 @@
+package com.company.bench;
+
+import com.company.NullSink;
+import com.company.StdAudio;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+
+/**
+ * The clip-and-convert path of {@link StdAudio#play} in isolation: one block of
+ * precomputed samples, a fifth of them out of range, played into a {@link NullSink}
+ * either one sample at a time or as a block. Scores are samples per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Thread)
+@OperationsPerInvocation(PlayBenchmark.SAMPLES)
+public class PlayBenchmark {
+
+    static final int SAMPLES = 4096;
+
+    private final double[] samples = new double[SAMPLES];
+    private final float[] floats = new float[SAMPLES];
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        StdAudio.setSink(new NullSink());
+        Random random = new Random(42);
+        for (int i = 0; i < SAMPLES; i++) {
+            samples[i] = random.nextDouble() * 2.5 - 1.25;
+            floats[i] = (float) samples[i];
+        }
+    }
+
+    @Benchmark
+    public void perSample() {
+        for (double sample : samples)
+            StdAudio.play(sample);
+    }
+
+    @Benchmark
+    public void doubleBlock() {
+        StdAudio.play(samples, 0, SAMPLES);
+    }
+
+    @Benchmark
+    public void floatBlock() {
+        StdAudio.play(floats, 0, SAMPLES);
+    }
+}
@@ -0,0 +1,71 @@
+package com.company.bench;
+
+import com.company.AudioSession;
+import com.company.CompiledScore;
+import com.company.NullSink;
+import com.company.OscillatorMode;
+import com.company.Score;
+import com.company.StdAudio;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders the anthem on every thread at once, each thread through its own
+ * {@link AudioSession} into its own {@link NullSink}. Sessions share nothing, so the
+ * {@code samples} counter should grow with the number of cores; compare it with
+ * {@code AnthemRenderBenchmark.sequential} and vary the thread count with {@code -t}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@Threads(Threads.MAX)
+public class SessionBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Anthem {
+        CompiledScore score;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            score = Score.loadResource("anthem.score").compile(StdAudio.SAMPLE_RATE);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Session {
+        AudioSession session;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            session = new AudioSession(new NullSink());
+            session.setOscillatorMode(OscillatorMode.WAVETABLE);
+        }
+    }
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Samples {
+        public long samples;
+    }
+
+    @Benchmark
+    public void play(Anthem anthem, Session session, Samples counter) {
+        session.session.play(anthem.score);
+        counter.samples += anthem.score.totalSamples();
+    }
+}
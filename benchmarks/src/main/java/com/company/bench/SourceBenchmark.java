@@ -0,0 +1,77 @@
+package com.company.bench;
+
+import com.company.CompiledScore;
+import com.company.OscillatorMode;
+import com.company.Score;
+import com.company.ScoreSource;
+import com.company.StdAudio;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pulls the whole anthem out of a {@link ScoreSource}: block by block with
+ * {@code read}, and as a sequential and a parallel {@code DoubleStream} summed to one
+ * number. The {@code samples} counter reports samples per second; compare it with
+ * {@code AnthemRenderBenchmark}, which pushes the same samples into a sink.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Thread)
+public class SourceBenchmark {
+
+    private CompiledScore anthem;
+    private ScoreSource source;
+    private final double[] block = new double[1024];
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        anthem = Score.loadResource("anthem.score").compile(StdAudio.SAMPLE_RATE);
+        source = new ScoreSource(anthem, OscillatorMode.WAVETABLE);
+    }
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Samples {
+        public long samples;
+    }
+
+    @Benchmark
+    public double read(Samples counter) {
+        source.seek(0);
+        double last = 0;
+        int n;
+        while ((n = source.read(block, 0, block.length)) > 0)
+            last += block[n - 1];
+        counter.samples += anthem.totalSamples();
+        return last;
+    }
+
+    @Benchmark
+    public double stream(Samples counter) {
+        source.seek(0);
+        counter.samples += anthem.totalSamples();
+        return source.stream().sum();
+    }
+
+    @Benchmark
+    public double parallelStream(Samples counter) {
+        source.seek(0);
+        counter.samples += anthem.totalSamples();
+        return source.stream().parallel().sum();
+    }
+}
@@ -0,0 +1,144 @@
+package com.company.bench;
+
+import com.company.AudioSink;
+import com.company.StdAudio;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts a fresh JVM running {@link StdAudio#main} and times it until the first samples
+ * reach the sink: the time to first sample, JVM startup included. Each operation is one
+ * cold start, so the score is already the number to watch in CI. The {@code cpuMillis}
+ * counter adds up the CPU time each child had used by then, on every thread; divide it
+ * by the measured operations for startup CPU per start.
+ *
+ * <p>With {@code classes = cds} the children map an AppCDS archive, created in the trial
+ * setup by one full run of the player, the way {@code mvn -B package -Pcds} builds one for
+ * the jar. The benchmark must run from the shaded jar, since the JVM will not archive
+ * classes loaded from directories.
+ *
+ * <p>Only the class-data part of the startup work is measured. The children play into a
+ * probe sink rather than the speaker, so no audio line is opened and {@code --fast-start},
+ * which overlaps opening the line with loading the score, would have nothing to overlap:
+ * it is not passed, and its gain has to be judged on a machine with a sound device.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 20)
+@Fork(1)
+@State(Scope.Thread)
+public class StartupBenchmark {
+
+    @Param({"default", "cds"})
+    public String classes;
+
+    private final List<String> command = new ArrayList<>();
+    private Path archive;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, InterruptedException {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        String classPath = System.getProperty("java.class.path");
+        command.add(java);
+        if (classes.equals("cds")) {
+            archive = Files.createTempFile("startup", ".jsa");
+            Path wav = Files.createTempFile("startup", ".wav");
+            Files.delete(archive);
+            try {
+                Process training = new ProcessBuilder(java, "-XX:ArchiveClassesAtExit=" + archive, "-cp", classPath,
+                        StdAudio.class.getName(), "--render", wav.toString())
+                        .redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+                if (training.waitFor() != 0 || !Files.exists(archive))
+                    throw new IllegalStateException("could not create a class data archive; run from benchmarks.jar");
+            }
+            finally {
+                Files.deleteIfExists(wav);
+            }
+            command.add("-XX:SharedArchiveFile=" + archive);
+        }
+        command.add("-cp");
+        command.add(classPath);
+        command.add(Probe.class.getName());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (archive != null) Files.deleteIfExists(archive);
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Cpu {
+        public long cpuMillis;
+    }
+
+    @Benchmark
+    public long firstSample(Cpu counter) throws IOException, InterruptedException {
+        Process child = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        String line;
+        try (BufferedReader out = new BufferedReader(new InputStreamReader(child.getInputStream(),
+                                                                           StandardCharsets.US_ASCII))) {
+            line = out.readLine();
+        }
+        if (child.waitFor() != 0 || line == null) throw new IllegalStateException("the player did not start");
+        long cpu = Long.parseLong(line.trim());
+        counter.cpuMillis += TimeUnit.NANOSECONDS.toMillis(cpu);
+        return cpu;
+    }
+
+    /**
+     * Plays the anthem into a sink that, at the first write, prints the CPU time the JVM
+     * has used in nanoseconds and halts it. Setting the sink keeps the player from opening
+     * the speaker, with or without {@code --fast-start}.
+     */
+    public static final class Probe {
+
+        private Probe() {
+        }
+
+        public static void main(String[] args) {
+            StdAudio.setSink(new AudioSink() {
+                @Override
+                public void write(byte[] bytes, int off, int len) {
+                    Duration cpu = ProcessHandle.current().info().totalCpuDuration().orElse(Duration.ZERO);
+                    System.out.println(cpu.toNanos());
+                    System.out.flush();
+                    Runtime.getRuntime().halt(0);
+                }
+
+                @Override
+                public void drain() {
+                }
+
+                @Override
+                public void close() {
+                }
+            });
+            StdAudio.main(args);
+        }
+    }
+}
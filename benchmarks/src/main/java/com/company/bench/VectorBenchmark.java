@@ -0,0 +1,73 @@
+package com.company.bench;
+
+import com.company.NullSink;
+import com.company.Oscillator;
+import com.company.OscillatorMode;
+import com.company.StdAudio;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+
+/**
+ * The Vector API paths against their scalar fallbacks: {@link OscillatorMode#POLYNOMIAL}
+ * voice mixing by voice count, and block PCM conversion. Every parameter combination runs
+ * in its own fork, where {@code vector} sets the {@code stdaudio.vector} property before
+ * anything reads it. Scores are samples per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Thread)
+@OperationsPerInvocation(VectorBenchmark.SAMPLES)
+public class VectorBenchmark {
+
+    static final int SAMPLES = 4096;
+
+    private static final double[] CHORD = {155.56, 311.13, 392.00, 466.16, 622.25, 783.99};
+
+    @Param({"true", "false"})
+    public String vector;
+
+    @Param({"1", "2", "3", "4", "5", "6"})
+    public int voices;
+
+    private final double[] block = new double[SAMPLES];
+    private final double[] samples = new double[SAMPLES];
+    private Oscillator oscillator;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        System.setProperty("stdaudio.vector", vector);
+        if (Oscillator.isVectorized() != Boolean.parseBoolean(vector))
+            throw new IllegalStateException("vector API not available to this fork");
+        StdAudio.setSink(new NullSink());
+        oscillator = new Oscillator(OscillatorMode.POLYNOMIAL, voices);
+        oscillator.start(CHORD, 0, voices, StdAudio.SAMPLE_RATE);
+        Random random = new Random(42);
+        for (int i = 0; i < SAMPLES; i++)
+            samples[i] = random.nextDouble() * 2.5 - 1.25;
+    }
+
+    @Benchmark
+    public double[] mixVoices() {
+        oscillator.render(block, 0, SAMPLES, 0.75 / voices);
+        return block;
+    }
+
+    @Benchmark
+    public void convertBlock() {
+        StdAudio.play(samples, 0, SAMPLES);
+    }
+}
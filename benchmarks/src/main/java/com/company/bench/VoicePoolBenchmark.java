@@ -0,0 +1,67 @@
+package com.company.bench;
+
+import com.company.StdAudio;
+import com.company.VoicePool;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders blocks from a {@link VoicePool} with every voice sounding, for several pool
+ * sizes and harmonic counts. The {@code voiceSamples} counter reports voice-samples per
+ * second, which should stay flat as {@code voices} grows; run with
+ * {@code -prof gc} to check that rendering allocates nothing.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class VoicePoolBenchmark {
+
+    @Param({"8", "32", "128"})
+    public int voices;
+
+    @Param({"1", "4", "16"})
+    public int harmonics;
+
+    private VoicePool pool;
+    private final double[] block = new double[1024];
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        pool = new VoicePool(voices, 4 * voices, StdAudio.SAMPLE_RATE);
+        double[] amplitudes = new double[harmonics];
+        for (int k = 0; k < harmonics; k++)
+            amplitudes[k] = 1.0 / (k + 1) / harmonics;
+        pool.setHarmonics(amplitudes);
+        for (int v = 0; v < voices; v++)
+            pool.noteOn(0, v, 55 + 3.1 * v, 1.0 / voices);
+    }
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class VoiceSamples {
+        public long voiceSamples;
+    }
+
+    @Benchmark
+    public double render(VoiceSamples counter) {
+        pool.render(block, 0, block.length);
+        counter.voiceSamples += (long) block.length * pool.activeVoices();
+        return block[block.length - 1];
+    }
+}
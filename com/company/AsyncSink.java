@@ -0,0 +1,237 @@
+package com.company;
+
+import javax.sound.sampled.AudioFormat;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Decouples synthesis from the blocking write to the sound card. Whatever thread calls
+ * {@link #write} only copies PCM into a preallocated {@link PcmRingBuffer}; a dedicated
+ * writer thread drains the ring into the wrapped sink. A GC pause or a slow chord then
+ * eats into the buffered lead time instead of turning straight into an underrun.
+ *
+ * <p>The ring holds {@code leadMillis} of audio. The producer stops when the ring
+ * reaches the high watermark and resumes once the writer has drained it to the low
+ * watermark. The writer waits for the ring to fill to the low watermark before it
+ * starts, and again after every underrun, so a larger gap between the watermarks and a
+ * longer lead time buy glitch resistance at the cost of latency.
+ */
+public final class AsyncSink implements AudioSink {
+
+    private static final long PARK_NANOS = 200_000;
+
+    private final AudioSink target;
+    private final PcmRingBuffer ring;
+    private final int frameSize;
+    private final int lowWatermark;     // Bytes.
+    private final int highWatermark;    // Bytes.
+    private final int chunkBytes;       // Largest single write to the target.
+    private final Thread writer;
+
+    private volatile boolean draining;      // Producer asked for everything to be written.
+    private volatile boolean closed;
+    private volatile boolean producerWaiting;
+    private volatile boolean writerWaiting;
+    private volatile boolean finished;      // Drained, and nothing written since.
+    private volatile boolean ranDry;        // The writer emptied the ring before the producer was done.
+    private volatile Throwable failure;     // Whatever stopped the writer thread.
+    private volatile long offered;          // Bytes put in the ring; only the producer changes this.
+    private volatile long written;          // Bytes the target's write has returned from.
+    private volatile long underruns;
+    private volatile Thread producer;       // Last thread that called write().
+
+    /**
+     * Wraps {@code target} with {@code leadMillis} of buffering and watermarks at
+     * 50% and 90% of the ring.
+     *
+     * @param target     the sink the writer thread drains into.
+     * @param format     the format of the audio being written.
+     * @param leadMillis how far ahead of playback the producer may run.
+     */
+    public AsyncSink(AudioSink target, AudioFormat format, int leadMillis) {
+        this(target, format, leadMillis, 0.5, 0.9);
+    }
+
+    /**
+     * Wraps {@code target} with {@code leadMillis} of buffering.
+     *
+     * @param  target        the sink the writer thread drains into.
+     * @param  format        the format of the audio being written.
+     * @param  leadMillis    how far ahead of playback the producer may run.
+     * @param  lowWatermark  fraction of the ring the writer waits for before starting,
+     *                       and that the producer waits for after hitting the high watermark.
+     * @param  highWatermark fraction of the ring at which the producer stops.
+     * @throws IllegalArgumentException if the watermarks are not
+     *         {@code 0 <= low < high <= 1} or the lead time is not positive.
+     */
+    public AsyncSink(AudioSink target, AudioFormat format, int leadMillis,
+                     double lowWatermark, double highWatermark) {
+        if (leadMillis <= 0) throw new IllegalArgumentException("lead time must be positive");
+        if (!(lowWatermark >= 0 && lowWatermark < highWatermark && highWatermark <= 1))
+            throw new IllegalArgumentException("watermarks must satisfy 0 <= low < high <= 1");
+        this.target = target;
+        this.frameSize = format.getFrameSize();
+        long bytes = (long) (format.getFrameRate() * frameSize * leadMillis / 1000);
+        this.ring = new PcmRingBuffer((int) Math.max(frameSize * 64L, bytes));
+        this.lowWatermark = alignDown((int) (ring.capacity() * lowWatermark));
+        this.highWatermark = Math.max(frameSize, alignDown((int) (ring.capacity() * highWatermark)));
+        this.chunkBytes = Math.max(frameSize, alignDown(ring.capacity() / 8));
+        this.writer = new Thread(this::drainLoop, "StdAudio-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    private int alignDown(int bytes) {
+        return bytes - bytes % frameSize;
+    }
+
+    @Override
+    public void write(byte[] bytes, int off, int len) {
+        producer = Thread.currentThread();
+        if (ranDry && len > 0) {
+            // More audio after the ring ran dry: the writer really did run out.
+            ranDry = false;
+            underruns++;
+        }
+        while (len > 0) {
+            checkFailure();
+            if (ring.size() >= highWatermark) {
+                // Full: wait for the writer to bring the ring down to the low watermark.
+                producerWaiting = true;
+                while (ring.size() > lowWatermark && failure == null)
+                    LockSupport.parkNanos(this, PARK_NANOS);
+                producerWaiting = false;
+                continue;
+            }
+            int n = ring.offer(bytes, off, Math.min(len, highWatermark - ring.size()));
+            offered += n;
+            finished = false;
+            off += n;
+            len -= n;
+            if (writerWaiting) LockSupport.unpark(writer);
+        }
+    }
+
+    // Writer thread: moves audio from the ring to the target until closed.
+    private void drainLoop() {
+        byte[] chunk = new byte[chunkBytes];
+        boolean primed = false;    // Playing, as opposed to waiting for the low watermark.
+        try {
+            while (true) {
+                int size = ring.size();
+                if (size == 0) {
+                    if (closed) return;
+                    if (primed && !draining && !finished) ranDry = true;
+                    primed = false;
+                }
+                int n = alignDown(Math.min(size, chunkBytes));
+                if (n == 0 || (!primed && size < lowWatermark && !draining)) {
+                    writerWaiting = true;
+                    LockSupport.parkNanos(this, PARK_NANOS);
+                    writerWaiting = false;
+                    continue;
+                }
+                primed = true;
+                int polled = ring.poll(chunk, 0, n);
+                target.write(chunk, 0, polled);
+                written += polled;
+                Thread p = producer;
+                if (producerWaiting && p != null && ring.size() <= lowWatermark) LockSupport.unpark(p);
+            }
+        }
+        catch (Throwable t) {
+            failure = t;
+            Thread p = producer;
+            if (p != null) LockSupport.unpark(p);
+        }
+    }
+
+    private void checkFailure() {
+        Throwable t = failure;
+        if (t != null) throw new IllegalStateException("audio writer thread failed", t);
+    }
+
+    /**
+     * Blocks until the writer thread has handed everything written so far to the
+     * target, then drains the target.
+     */
+    @Override
+    public void drain() {
+        draining = true;
+        LockSupport.unpark(writer);
+        while (written < offered && failure == null)
+            LockSupport.parkNanos(this, PARK_NANOS);
+        finished = true;
+        ranDry = false;
+        draining = false;
+        checkFailure();
+        target.drain();
+    }
+
+    @Override
+    public void close() {
+        if (closed) return;
+        try {
+            drain();
+        }
+        finally {
+            // Even after the writer failed, so the target's line or file is released.
+            closed = true;
+            LockSupport.unpark(writer);
+            try {
+                writer.join();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            target.close();
+        }
+    }
+
+    /**
+     * Returns how full the ring is, from 0 (empty) to 1 (full).
+     *
+     * @return the fill level.
+     */
+    public double fillLevel() {
+        return (double) ring.size() / ring.capacity();
+    }
+
+    /**
+     * Returns the size of the ring in bytes.
+     *
+     * @return the ring capacity.
+     */
+    public int capacity() {
+        return ring.capacity();
+    }
+
+    /**
+     * Returns the fill level, in bytes, the writer waits for before starting and the
+     * producer waits for after hitting the high watermark.
+     *
+     * @return the low watermark in bytes.
+     */
+    public int lowWatermark() {
+        return lowWatermark;
+    }
+
+    /**
+     * Returns the fill level, in bytes, at which the producer stops.
+     *
+     * @return the high watermark in bytes.
+     */
+    public int highWatermark() {
+        return highWatermark;
+    }
+
+    /**
+     * Returns how many times the writer found the ring empty before the producer was
+     * done: counted when more audio arrives after the ring ran dry, so the ring emptying
+     * at the end of a piece, before a drain or close, is not an underrun.
+     *
+     * @return the underrun count.
+     */
+    public long underruns() {
+        return underruns;
+    }
+}
@@ -0,0 +1,289 @@
+package com.company;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.sound.sampled.AudioFormat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves rendered scores over HTTP. {@code GET /render} streams the bundled anthem and
+ * {@code POST /render} streams the score sent as the request body, in its text form.
+ * The query string may set:
+ * <ul>
+ * <li>{@code tempo}, the speed relative to the written tempo, from 0.25 to 4 (default 1);</li>
+ * <li>{@code dynamics}, a factor from 0 to 4 applied to every amplitude (default 1);</li>
+ * <li>{@code rate}, the sample rate, from 8,000 to 192,000 Hz (default 44,100);</li>
+ * <li>{@code synthesis}, the rate chords are synthesized at before being resampled to
+ *     {@code rate}, in the same range (default {@code rate});</li>
+ * <li>{@code bits}, 8, 16 or 24 bits per sample (default 16);</li>
+ * <li>{@code channels}, 1 or 2 (default 1);</li>
+ * <li>{@code mode}, the {@link OscillatorMode} (default {@code WAVETABLE});</li>
+ * <li>{@code format}, {@code wav} (default) or {@code pcm} for bare little-endian
+ *     samples, unsigned at 8 bits and signed otherwise.</li>
+ * </ul>
+ *
+ * <p>Every request gets its own {@link AudioSession} writing into the chunked response
+ * body, so audio leaves through the same {@code multiplePlay} path the speaker uses, a
+ * few kilobytes at a time, and the first bytes go out as soon as the first chord is
+ * synthesized. Pieces are limited to an hour and score bodies to a megabyte. A
+ * connection holds only its session's buffers and the parsed score; a client that reads
+ * slowly blocks its own synthesis through TCP backpressure. Requests run on virtual
+ * threads when the JVM has them (JDK 21 and later), so hundreds of concurrent streams
+ * cost little more than their buffers, and on a pool of platform threads otherwise.
+ */
+public final class AudioServer {
+
+    private static final int MAX_SCORE_BYTES = 1 << 20;
+    private static final int MIN_RATE = 8000;
+    private static final int MAX_RATE = 192000;
+    private static final double MIN_TEMPO = 0.25;
+    private static final double MAX_TEMPO = 4;
+    private static final double MAX_DYNAMICS = 4;
+    private static final double MAX_SECONDS = 3600;    // Longest piece one request may ask for.
+    private static final int BACKLOG = 1024;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ChordCache cache;
+    private final Score anthem = Score.loadResource("anthem.score");
+    private final AtomicInteger activeStreams = new AtomicInteger();
+
+    private AudioServer(HttpServer server, ChordCache cache) {
+        this.server = server;
+        this.cache = cache;
+        this.executor = newExecutor();
+        server.setExecutor(executor);
+        server.createContext("/render", this::render);
+    }
+
+    /**
+     * Starts a server on {@code address}.
+     *
+     * @param  address where to listen; port 0 picks a free port.
+     * @param  cache   a chord cache shared by every stream, or {@code null} for none.
+     * @return the running server.
+     * @throws UncheckedIOException if the address cannot be bound.
+     */
+    public static AudioServer start(InetSocketAddress address, ChordCache cache) {
+        try {
+            AudioServer audioServer = new AudioServer(HttpServer.create(address, BACKLOG), cache);
+            audioServer.server.start();
+            return audioServer;
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Virtual threads when the JVM has them; the build still targets JDK 17.
+    private static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /**
+     * Returns the address the server is listening on.
+     *
+     * @return the bound address.
+     */
+    public InetSocketAddress address() {
+        return server.getAddress();
+    }
+
+    /**
+     * Returns the number of responses being streamed right now.
+     *
+     * @return the active stream count.
+     */
+    public int activeStreams() {
+        return activeStreams.get();
+    }
+
+    /**
+     * Stops accepting requests, gives the streams in progress up to {@code delaySeconds}
+     * to finish and then closes them.
+     *
+     * @param delaySeconds how long to wait for streams in progress.
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(delaySeconds, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Handles one request on its own (virtual) thread. Everything that can be rejected is
+    // checked before the response headers go out; after that a failure, usually the client
+    // hanging up, can only cut the stream short.
+    private void render(HttpExchange exchange) {
+        try {
+            String method = exchange.getRequestMethod();
+            if (!method.equals("GET") && !method.equals("POST")) {
+                exchange.getResponseHeaders().set("Allow", "GET, POST");
+                respond(exchange, 405, "use GET or POST");
+                return;
+            }
+            CompiledScore score;
+            AudioFormat audioFormat;
+            int synthesis;
+            OscillatorMode mode;
+            boolean wav;
+            try {
+                Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+                double tempo = Double.parseDouble(query.getOrDefault("tempo", "1"));
+                if (!(tempo >= MIN_TEMPO && tempo <= MAX_TEMPO))
+                    throw new IllegalArgumentException("tempo must be between " + MIN_TEMPO + " and " + MAX_TEMPO);
+                double dynamics = Double.parseDouble(query.getOrDefault("dynamics", "1"));
+                if (!(dynamics >= 0 && dynamics <= MAX_DYNAMICS))
+                    throw new IllegalArgumentException("dynamics must be between 0 and " + MAX_DYNAMICS);
+                int rate = rate(query, "rate", StdAudio.SAMPLE_RATE);
+                synthesis = rate(query, "synthesis", rate);
+                int bits = Integer.parseInt(query.getOrDefault("bits", "16"));
+                if (bits != 8 && bits != 16 && bits != 24)
+                    throw new IllegalArgumentException("bits must be 8, 16 or 24");
+                int channels = Integer.parseInt(query.getOrDefault("channels", "1"));
+                if (channels != 1 && channels != 2)
+                    throw new IllegalArgumentException("channels must be 1 or 2");
+                audioFormat = AudioSession.pcmFormat(rate, bits, channels);
+                mode = OscillatorMode.valueOf(query.getOrDefault("mode", "WAVETABLE").toUpperCase());
+                String format = query.getOrDefault("format", "wav");
+                if (!format.equals("wav") && !format.equals("pcm"))
+                    throw new IllegalArgumentException("format must be wav or pcm");
+                wav = format.equals("wav");
+                Score source = method.equals("POST") ? Score.parse(readBody(exchange)) : anthem;
+                Score scaled = source.scaled(tempo, dynamics);
+                double seconds = 0;
+                for (int n = 0; n < scaled.notes(); n++)
+                    seconds += scaled.duration(n);
+                if (!(seconds <= MAX_SECONDS))
+                    throw new IllegalArgumentException("scores are limited to " + (int) MAX_SECONDS + " seconds");
+                score = scaled.compile(synthesis);
+            }
+            catch (IllegalArgumentException e) {
+                respond(exchange, 400, e.getMessage());
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", wav ? "audio/wav" : "application/octet-stream");
+            exchange.sendResponseHeaders(200, 0);    // Chunked.
+            activeStreams.incrementAndGet();
+            try (OutputStream body = exchange.getResponseBody()) {
+                AudioSession session = new AudioSession(new StreamSink(body), new PlaybackMetrics(), audioFormat);
+                session.setSynthesisRate(synthesis);
+                long frames = Resampler.outputLength(synthesis, session.sampleRate(), score.totalSamples());
+                if (wav) body.write(WavFileSink.header(audioFormat, frames * audioFormat.getFrameSize()).array());
+                session.setOscillatorMode(mode);
+                session.setCache(cache);
+                session.play(score);
+                session.close();
+            }
+            finally {
+                activeStreams.decrementAndGet();
+            }
+        }
+        catch (IOException | UncheckedIOException e) {
+            // The client went away; there is nobody left to tell.
+        }
+        catch (BodyTooLargeException e) {
+            try {
+                respond(exchange, 413, "scores are limited to " + MAX_SCORE_BYTES + " bytes");
+            }
+            catch (IOException ignored) {
+            }
+        }
+        finally {
+            exchange.close();
+        }
+    }
+
+    // Reads a sample rate parameter, checking it is within range.
+    private static int rate(Map<String, String> query, String name, int defaultRate) {
+        int rate = Integer.parseInt(query.getOrDefault(name, Integer.toString(defaultRate)));
+        if (rate < MIN_RATE || rate > MAX_RATE)
+            throw new IllegalArgumentException(name + " must be between " + MIN_RATE + " and " + MAX_RATE);
+        return rate;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] text = (message + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, text.length);
+        try (OutputStream body = exchange.getResponseBody()) {
+            body.write(text);
+        }
+    }
+
+    // Reads the request body as a score, refusing anything over MAX_SCORE_BYTES.
+    private static String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] bytes = in.readNBytes(MAX_SCORE_BYTES + 1);
+            if (bytes.length > MAX_SCORE_BYTES) throw new BodyTooLargeException();
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static Map<String, String> query(String raw) {
+        Map<String, String> params = new HashMap<>();
+        if (raw == null || raw.isEmpty()) return params;
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            params.put(URLDecoder.decode(name, StandardCharsets.UTF_8),
+                       URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    // Thrown by readBody so the handler can answer 413 instead of 400.
+    private static final class BodyTooLargeException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        BodyTooLargeException() {
+            super(null, null, false, false);
+        }
+    }
+
+    // Serves scores until the process is killed. It listens on localhost:8080 unless
+    // "--host name" and "--port n" say otherwise, and with "--cache mb" every stream
+    // shares a chord cache of that size.
+    public static void main(String[] args) throws IOException {
+        InetAddress host = InetAddress.getLoopbackAddress();
+        int port = 8080;
+        ChordCache cache = null;
+        for (int a = 0; a < args.length; a++) {
+            if (args[a].equals("--host") && a + 1 < args.length)
+                host = InetAddress.getByName(args[++a]);
+            else if (args[a].equals("--port") && a + 1 < args.length)
+                port = Integer.parseInt(args[++a]);
+            else if (args[a].equals("--cache") && a + 1 < args.length)
+                cache = new ChordCache(Long.parseLong(args[++a]) << 20);
+            else
+                throw new IllegalArgumentException("usage: AudioServer [--host name] [--port n] [--cache mb]");
+        }
+        AudioServer server = start(new InetSocketAddress(host, port), cache);
+        System.out.println("Streaming on http://" + host.getHostName() + ":" + server.address().getPort() + "/render");
+    }
+}
@@ -0,0 +1,1260 @@
+package com.company;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.LineUnavailableException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * One independent stream of audio: its own format, internal buffer, oscillator and sink.
+ * {@link StdAudio} is a facade over one default session; create more to drive several
+ * streams from one JVM, for example one session per virtual thread, each rendering a
+ * different variant of a score to its own file.
+ *
+ * <p>The output format is fixed when the session is created: any sample rate, unsigned
+ * 8-bit or signed 16, 24 or 32-bit PCM, and any number of channels, every channel
+ * carrying the same signal. Both buffers are counted in frames, so they hold the same
+ * length of audio whatever the format. Chords can be synthesized at a lower rate than the
+ * output and brought up to it by a {@link Resampler}; see {@link #setSynthesisRate}.
+ *
+ * <p>Sessions share nothing mutable with each other, so any number of them can run at
+ * once without coordination. A {@link ChordCache} or {@link PlaybackMetrics} may still be
+ * shared between sessions on purpose; both are thread-safe. Every method of a session
+ * holds the session's lock, so threads that share one session cannot corrupt its buffer,
+ * but their samples interleave in whatever order they get the lock. The lock is a
+ * {@link ReentrantLock} rather than a monitor so a virtual thread blocked in a sink write
+ * does not pin its carrier.
+ */
+public final class AudioSession {
+
+    private static final int BITS_PER_SAMPLE = 16;       // 16-bit audio
+    private static final double MAX_16_BIT = 32768;
+
+    // The line holds 16384 frames, about 370 ms at 44.1 kHz, and the internal buffer a
+    // third of that: we can't expect the buffered data to line up exactly with when the
+    // sound card decides to push out its samples.
+    private static final int LINE_BUFFER_FRAMES = 16384;
+    private static final int WRITE_BUFFER_FRAMES = LINE_BUFFER_FRAMES / 3;
+
+    private static final int MONO = 1;
+
+    private static final int BLOCK_SIZE = 1024;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final PlaybackMetrics metrics;
+
+    private final AudioFormat format;
+    private final int sampleRate;         // Output samples per second.
+    private final int sampleBytes;        // Bytes in one sample of one channel.
+    private final int channels;
+    private final int frameSize;          // Bytes in one sample of every channel.
+    private final boolean bigEndian;
+    private final boolean pcm16;          // Signed 16-bit little-endian mono, the chord cache's layout.
+
+    private AudioSink sink;               // Where the sound goes: the speaker unless told otherwise.
+    private int lineBufferFrames = LINE_BUFFER_FRAMES;
+    private int writeBufferFrames = WRITE_BUFFER_FRAMES;
+    private int targetLatency;            // Milliseconds the speaker aims for; 0 for fixed buffers.
+    private LineSink pacedLine;           // The speaker, if opened for the target latency.
+    private FutureTask<LineSink> opening; // The speaker being opened in the background, if asked for.
+    private boolean openingPaced;         // Whether it is being opened for the target latency.
+    private byte[] prelude;               // Audio played while it opens, for its first write.
+    private int preludeSize;              // Number of bytes currently in the prelude.
+    private byte[] buffer;                // Internal buffer, a whole number of frames long.
+    private int bufferLimit;              // Bytes the internal buffer is filled to before it is written.
+    private int bufferSize;               // Number of bytes currently in internal buffer.
+
+    private Oscillator oscillator = new Oscillator(defaultOscillatorMode(), 8);
+    private final double[] block = new double[BLOCK_SIZE];    // Reusable chord block.
+    private final double[] single = new double[1];            // One sample in a wide format.
+    private ChordCache cache;                                 // Rendered chords, if enabled.
+    private RenderCache diskCache;                            // Rendered chords and scores on disk, if enabled.
+    private Recording recording;                              // Score render to store on disk.
+    private double[] sortedHzs = new double[8];               // Cache key scratch.
+
+    private int synthesisRate;            // Samples per second chords are rendered at.
+    private Resampler resampler;          // Synthesis rate to output rate, if they differ.
+    private double[] resampled;           // Resampler output for one block.
+
+    private long writeNanos;              // Time spent in sink writes, while metrics are enabled.
+    private long noteSince;               // When the chord being played was asked for.
+    private long bufferSince;             // When the oldest audio in the internal buffer was asked for.
+
+    /**
+     * Creates a session that plays through the speaker. The audio line is only opened
+     * when the first samples are written, so a sink can still be chosen with
+     * {@link #setSink} on a headless machine.
+     */
+    public AudioSession() {
+        this(null, new PlaybackMetrics());
+    }
+
+    /**
+     * Creates a session that writes to {@code sink}.
+     *
+     * @param sink the destination of everything played.
+     * @throws IllegalArgumentException if {@code sink} is {@code null}.
+     */
+    public AudioSession(AudioSink sink) {
+        this(requireSink(sink), new PlaybackMetrics());
+    }
+
+    /**
+     * Creates a session that writes to {@code sink} and reports to {@code metrics}, which
+     * may be shared with other sessions to aggregate their counters.
+     *
+     * @param sink    the destination, or {@code null} to open the speaker when needed.
+     * @param metrics where to report synthesis and writes while they are enabled.
+     * @throws IllegalArgumentException if {@code metrics} is {@code null}.
+     */
+    public AudioSession(AudioSink sink, PlaybackMetrics metrics) {
+        this(sink, metrics, StdAudio.SAMPLE_RATE);
+    }
+
+    /**
+     * Creates a session that writes 16-bit mono audio at {@code sampleRate} to
+     * {@code sink} and reports to {@code metrics}.
+     *
+     * @param sink       the destination, or {@code null} to open the speaker when needed.
+     * @param metrics    where to report synthesis and writes while they are enabled.
+     * @param sampleRate samples per second.
+     * @throws IllegalArgumentException if {@code metrics} is {@code null} or the sample
+     *         rate is not positive.
+     */
+    public AudioSession(AudioSink sink, PlaybackMetrics metrics, int sampleRate) {
+        this(sink, metrics, pcmFormat(sampleRate, BITS_PER_SAMPLE, MONO));
+    }
+
+    /**
+     * Creates a session that writes audio in {@code format} to {@code sink} and reports
+     * to {@code metrics}.
+     *
+     * @param sink    the destination, or {@code null} to open the speaker when needed.
+     * @param metrics where to report synthesis and writes while they are enabled.
+     * @param format  the output format: unsigned 8-bit or signed 16, 24 or 32-bit PCM at
+     *                a whole number of samples per second.
+     * @throws IllegalArgumentException if {@code metrics} is {@code null} or the format
+     *         is not supported.
+     */
+    public AudioSession(AudioSink sink, PlaybackMetrics metrics, AudioFormat format) {
+        if (metrics == null) throw new IllegalArgumentException("metrics is null");
+        int bits = format.getSampleSizeInBits();
+        boolean supported = bits == 8
+                ? format.getEncoding().equals(AudioFormat.Encoding.PCM_UNSIGNED)
+                : (bits == 16 || bits == 24 || bits == 32) && format.getEncoding().equals(AudioFormat.Encoding.PCM_SIGNED);
+        if (!supported || format.getChannels() < 1)
+            throw new IllegalArgumentException("unsupported format " + format
+                    + "; use unsigned 8-bit or signed 16, 24 or 32-bit PCM");
+        int rate = (int) format.getSampleRate();
+        if (rate <= 0 || rate != format.getSampleRate())
+            throw new IllegalArgumentException("sample rate must be a positive whole number");
+        if (format.getFrameSize() != format.getChannels() * bits / 8)
+            throw new IllegalArgumentException("frame size does not match the sample size and channels");
+        this.sink = sink;
+        this.metrics = metrics;
+        this.format = format;
+        this.sampleRate = rate;
+        this.synthesisRate = rate;
+        this.sampleBytes = bits / 8;
+        this.channels = format.getChannels();
+        this.frameSize = format.getFrameSize();
+        this.bigEndian = format.isBigEndian() && bits > 8;
+        this.pcm16 = bits == 16 && channels == 1 && !bigEndian;
+        this.buffer = new byte[WRITE_BUFFER_FRAMES * frameSize];
+        this.bufferLimit = buffer.length;
+    }
+
+    private static AudioSink requireSink(AudioSink sink) {
+        if (sink == null) throw new IllegalArgumentException("sink is null");
+        return sink;
+    }
+
+    /**
+     * Returns the little-endian PCM format with {@code bits} per sample: unsigned for 8
+     * bits, as WAV files expect, and signed otherwise.
+     *
+     * @param  sampleRate samples per second.
+     * @param  bits       8, 16, 24 or 32.
+     * @param  channels   number of channels.
+     * @return the audio format.
+     * @throws IllegalArgumentException if the sample rate is not positive.
+     */
+    public static AudioFormat pcmFormat(int sampleRate, int bits, int channels) {
+        if (sampleRate <= 0) throw new IllegalArgumentException("sample rate must be positive");
+        return new AudioFormat((float) sampleRate, bits, channels, bits > 8, false);
+    }
+
+    /**
+     * Returns the format of the audio this session produces.
+     *
+     * @return the audio format.
+     */
+    public AudioFormat format() {
+        return format;
+    }
+
+    /**
+     * Returns the output sample rate of this session.
+     *
+     * @return samples per second.
+     */
+    public int sampleRate() {
+        return sampleRate;
+    }
+
+    // Opens audio stream.
+    private AudioSink openLine() {
+        return useLine(openLine(format, metrics, targetLatency, lineBufferFrames * frameSize, false),
+                       targetLatency > 0);
+    }
+
+    // Opens the speaker for a target latency in milliseconds, or with a buffer of
+    // bufferBytes if it is 0. Touches no session state, so it can run on any thread.
+    private static LineSink openLine(AudioFormat format, PlaybackMetrics metrics, int latency, int bufferBytes,
+                                     boolean primed) {
+        try {
+            if (latency == 0) return LineSink.open(format, bufferBytes, metrics, primed);
+            return LineSink.openForLatency(format, latency, metrics, primed);
+        }
+        catch (LineUnavailableException e) {
+            throw new IllegalStateException("no audio line available (" + e.getMessage()
+                    + "); use --render to write a file instead", e);
+        }
+    }
+
+    // Starts writing to a freshly opened speaker in the chunks it asks for, if paced.
+    private AudioSink useLine(LineSink line, boolean paced) {
+        if (paced) {
+            pacedLine = line;
+            followChunk();
+        }
+        return line;
+    }
+
+    /**
+     * Starts opening the speaker on a background thread and returns at once, so that
+     * negotiating with the sound system overlaps with loading a score and rendering its
+     * first notes. Until the line is open, what is played is held in memory, up to one
+     * line buffer (or one latency budget) of audio; the line is opened primed, see
+     * {@link LineSink}, and given everything held in one write, so it starts with its
+     * buffer full of the opening bars instead of playing the first write on its own and
+     * risking an underrun while the JVM is still warming up. Does nothing if a sink was
+     * chosen or the speaker is already open or opening.
+     */
+    public void openSpeakerAsync() {
+        lock.lock();
+        try {
+            if (sink != null || opening != null) return;
+            AudioFormat format = this.format;
+            PlaybackMetrics metrics = this.metrics;
+            int latency = targetLatency;
+            int bufferBytes = lineBufferFrames * frameSize;
+            long preludeFrames = latency == 0 ? lineBufferFrames : (long) sampleRate * latency / 1000;
+            // Not a lambda: linking the first one costs the calling thread several milliseconds.
+            opening = new FutureTask<>(new Callable<LineSink>() {
+                @Override
+                public LineSink call() {
+                    return openLine(format, metrics, latency, bufferBytes, true);
+                }
+            });
+            openingPaced = latency > 0;
+            prelude = new byte[(int) Math.max(1, Math.min(lineBufferFrames, preludeFrames)) * frameSize];
+            preludeSize = 0;
+            Thread opener = new Thread(opening, "StdAudio-opener");
+            opener.setDaemon(true);
+            opener.start();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    // Holds bytes for the speaker while it is still being opened, if there is room.
+    private boolean hold(byte[] bytes, int off, int len) {
+        if (opening == null || opening.isDone() || len > prelude.length - preludeSize) return false;
+        System.arraycopy(bytes, off, prelude, preludeSize, len);
+        preludeSize += len;
+        return true;
+    }
+
+    // Waits for the speaker being opened in the background and writes it what was held.
+    private AudioSink awaitLine() {
+        FutureTask<LineSink> task = opening;
+        byte[] held = prelude;
+        int heldSize = preludeSize;
+        opening = null;
+        prelude = null;
+        preludeSize = 0;
+        LineSink line;
+        try {
+            line = task.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while opening the audio line", e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+        useLine(line, openingPaced);
+        if (heldSize > 0) line.write(held, 0, heldSize);
+        return line;
+    }
+
+    /**
+     * Sizes the speaker's buffers from a latency budget instead of fixed frame counts. The
+     * line then waits, before every write, until the audio it holds plus one write chunk
+     * fits in the budget, and the internal buffer follows the chunk size the line asks
+     * for; underruns raise the budget and quiet stretches lower it back to the target,
+     * see {@link LineSink#openForLatency}. A few tens of milliseconds suit interactive
+     * use, a few hundred keep batch playback steady on a busy machine. It takes effect
+     * the next time this session opens the speaker, and overrides
+     * {@link #setLineBufferFrames} and {@link #setWriteBufferFrames} while the speaker is
+     * open.
+     *
+     * @param millis the output latency to aim for, or 0 to go back to fixed buffers.
+     * @throws IllegalArgumentException if {@code millis} is negative.
+     */
+    public void setTargetLatency(int millis) {
+        if (millis < 0) throw new IllegalArgumentException("target latency must not be negative");
+        lock.lock();
+        try {
+            targetLatency = millis;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the output latency the speaker is opened for.
+     *
+     * @return milliseconds, or 0 if the speaker uses fixed buffers.
+     */
+    public int getTargetLatency() {
+        lock.lock();
+        try {
+            return targetLatency;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    // Fills the internal buffer only as far as the paced line wants per write, growing it
+    // if the line wants more than it holds. Only called while the buffer is empty.
+    private void followChunk() {
+        int chunk = pacedLine.chunkBytes();
+        if (chunk > buffer.length) buffer = new byte[chunk];
+        bufferLimit = chunk;
+    }
+
+    /**
+     * Sets the size of the audio line's buffer, which bounds the latency of the speaker.
+     * It takes effect the next time this session opens the speaker.
+     *
+     * @param frames the line buffer size in frames; the default is 16384.
+     * @throws IllegalArgumentException if {@code frames} is not positive.
+     */
+    public void setLineBufferFrames(int frames) {
+        if (frames <= 0) throw new IllegalArgumentException("line buffer must hold at least one frame");
+        lock.lock();
+        try {
+            lineBufferFrames = frames;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the size the audio line's buffer is opened with.
+     *
+     * @return the line buffer size in frames.
+     */
+    public int getLineBufferFrames() {
+        lock.lock();
+        try {
+            return lineBufferFrames;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets the size of the internal buffer, which is how much audio goes to the sink in
+     * one write. Anything already in the buffer is written first.
+     *
+     * @param frames the internal buffer size in frames; the default is a third of the
+     *               default line buffer.
+     * @throws IllegalArgumentException if {@code frames} is not positive.
+     */
+    public void setWriteBufferFrames(int frames) {
+        if (frames <= 0) throw new IllegalArgumentException("write buffer must hold at least one frame");
+        lock.lock();
+        try {
+            if (bufferSize > 0) flush();
+            writeBufferFrames = frames;
+            buffer = new byte[frames * frameSize];
+            bufferLimit = buffer.length;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns how much audio goes to the sink in one write, which follows the line while
+     * the speaker is open for a target latency.
+     *
+     * @return the internal buffer size in frames.
+     */
+    public int getWriteBufferFrames() {
+        lock.lock();
+        try {
+            return bufferLimit / frameSize;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Renders chords and scores at {@code rate} and resamples them to the output rate.
+     * At 22,050 or 11,025 Hz synthesis does a half or a quarter of the work, which suits
+     * previews and bulk rendering; everything above about 45% of the synthesis rate is
+     * filtered out, and the resampler costs 16 multiply-adds per output sample. Samples
+     * passed to {@code play} are always taken to be at the output rate. Anything the
+     * resampler still holds is written out first.
+     *
+     * @param rate samples per second to synthesize at; the output rate turns resampling off.
+     * @throws IllegalArgumentException if {@code rate} is not positive.
+     */
+    public void setSynthesisRate(int rate) {
+        if (rate <= 0) throw new IllegalArgumentException("synthesis rate must be positive");
+        lock.lock();
+        try {
+            drainResampler();
+            synthesisRate = rate;
+            if (rate == sampleRate) {
+                resampler = null;
+                resampled = null;
+            }
+            else {
+                resampler = new Resampler(rate, sampleRate);
+                resampled = new double[resampler.maxOutput(BLOCK_SIZE)];
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the rate chords and scores are synthesized at.
+     *
+     * @return samples per second.
+     */
+    public int getSynthesisRate() {
+        lock.lock();
+        try {
+            return synthesisRate;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    // Gives up on the speaker being opened in the background, dropping what was held for
+    // it and what is still buffered, since the caller chose another sink before a sound
+    // came out. A daemon thread closes the line once it is open, so it does not leak and
+    // the caller does not wait for the sound system.
+    private void abandonLine() {
+        FutureTask<LineSink> task = opening;
+        opening = null;
+        prelude = null;
+        preludeSize = 0;
+        bufferSize = 0;
+        Thread closer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.get().close();
+                }
+                catch (InterruptedException | ExecutionException e) {
+                    // Nothing was opened, or nobody is left to tell.
+                }
+            }
+        }, "StdAudio-closer");
+        closer.setDaemon(true);
+        closer.start();
+    }
+
+    /**
+     * Sends everything played from now on to {@code sink} instead of the speaker.
+     * Anything still in the internal buffer goes to the previous sink first, unless that
+     * is a speaker still being opened in the background: then nothing played so far is
+     * heard, and the speaker is closed as soon as it is open.
+     *
+     * @param sink the new destination.
+     */
+    public void setSink(AudioSink sink) {
+        requireSink(sink);
+        lock.lock();
+        try {
+            if (opening != null) {
+                drainResampler();
+                abandonLine();
+            }
+            else if (this.sink != null) flush();
+            this.sink = sink;
+            unpace();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Moves the blocking writes to the current sink (the speaker unless another sink
+     * was set) onto a dedicated writer thread fed through a ring holding
+     * {@code leadMillis} of audio. See {@link AsyncSink} for the watermarks.
+     *
+     * @param  leadMillis    how far synthesis may run ahead of playback.
+     * @param  lowWatermark  fraction of the ring the writer waits for before (re)starting.
+     * @param  highWatermark fraction of the ring at which synthesis pauses.
+     * @return the asynchronous sink now in use, for watching its fill level and underruns.
+     */
+    public AsyncSink setAsync(int leadMillis, double lowWatermark, double highWatermark) {
+        lock.lock();
+        try {
+            flush();
+            AsyncSink async = new AsyncSink(sink(), format, leadMillis, lowWatermark, highWatermark);
+            sink = async;
+            unpace();
+            return async;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    // Goes back to the configured write size once the paced line is no longer written to.
+    private void unpace() {
+        if (pacedLine == null || sink == pacedLine) return;
+        pacedLine = null;
+        buffer = new byte[writeBufferFrames * frameSize];
+        bufferLimit = buffer.length;
+    }
+
+    // Returns the current sink, opening the audio line if nothing else was chosen.
+    private AudioSink sink() {
+        if (sink == null) sink = opening != null ? awaitLine() : openLine();
+        return sink;
+    }
+
+    // Sends whatever the resampler and the internal buffer hold to the sink.
+    private void flush() {
+        drainResampler();
+        if (bufferSize > 0) {
+            write(buffer, 0, bufferSize);
+            bufferSize = 0;
+        }
+    }
+
+    // Pushes the samples the resampler is holding back into the internal buffer, so that
+    // whatever is played next comes after them.
+    private void drainResampler() {
+        if (resampler == null) return;
+        int n = resampler.drain(resampled, 0);
+        if (n > 0) encode(resampled, 0, n);
+    }
+
+    // Hands bytes to the sink, timing the write while metrics are enabled.
+    private void write(byte[] bytes, int off, int len) {
+        if (recording != null) recording.write(bytes, off, len);
+        if (hold(bytes, off, len)) return;
+        AudioSink target = sink();
+        if (!metrics.isEnabled()) target.write(bytes, off, len);
+        else {
+            metrics.pending(bufferSince);
+            long start = System.nanoTime();
+            target.write(bytes, off, len);
+            writeNanos += System.nanoTime() - start;
+            bufferSince = noteSince;
+        }
+        if (target == pacedLine) followChunk();
+    }
+
+    // Hands an entry from the disk cache to the sink: in one write to sinks that take a
+    // buffer as it is, and otherwise through the internal buffer, which is empty whenever
+    // an entry is played, so a hit allocates nothing on the way.
+    private void write(ByteBuffer bytes) {
+        AudioSink target = sink();
+        if (!(target instanceof WavFileSink || target instanceof NullSink)) {
+            while (bytes.hasRemaining()) {
+                int n = Math.min(bufferLimit, bytes.remaining());
+                bytes.get(buffer, 0, n);
+                write(buffer, 0, n);
+            }
+            return;
+        }
+        if (recording != null) recording.write(bytes.duplicate());
+        if (!metrics.isEnabled()) target.write(bytes);
+        else {
+            metrics.pending(bufferSince);
+            long start = System.nanoTime();
+            target.write(bytes);
+            writeNanos += System.nanoTime() - start;
+            bufferSince = noteSince;
+        }
+        if (target == pacedLine) followChunk();
+    }
+
+    /**
+     * Returns the playback metrics of this session. They start disabled; enable them with
+     * {@link PlaybackMetrics#setEnabled} and publish them with {@link PlaybackMetrics#register}.
+     *
+     * @return the playback metrics.
+     */
+    public PlaybackMetrics metrics() {
+        return metrics;
+    }
+
+    // Reads the oscillator mode from the "stdaudio.oscillator" system property, if set.
+    private static OscillatorMode defaultOscillatorMode() {
+        String mode = System.getProperty("stdaudio.oscillator");
+        if (mode == null) return OscillatorMode.WAVETABLE;
+        return OscillatorMode.valueOf(mode.trim().toUpperCase());
+    }
+
+    /**
+     * Selects how {@link #multiplePlay} generates its sine waves.
+     *
+     * @param mode the oscillator mode to use.
+     * @throws IllegalArgumentException if {@code mode} is {@code null}.
+     */
+    public void setOscillatorMode(OscillatorMode mode) {
+        Oscillator next = new Oscillator(mode, 8);
+        lock.lock();
+        try {
+            oscillator = next;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the oscillator mode {@link #multiplePlay} currently uses.
+     *
+     * @return the oscillator mode.
+     */
+    public OscillatorMode getOscillatorMode() {
+        lock.lock();
+        try {
+            return oscillator.mode();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Replays repeated chords from {@code cache} instead of synthesizing them again.
+     * One cache can serve many sessions. The cache holds 16-bit mono chords, so it is
+     * only consulted while the output is 16-bit mono and chords are synthesized at the
+     * output rate. See {@link ChordCache} for how this can change the output.
+     *
+     * @param cache the chord cache, or {@code null} to synthesize every chord.
+     */
+    public void setCache(ChordCache cache) {
+        lock.lock();
+        try {
+            this.cache = cache;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the chord cache in use.
+     *
+     * @return the chord cache, or {@code null} if there is none.
+     */
+    public ChordCache getCache() {
+        lock.lock();
+        try {
+            return cache;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Keeps rendered audio in {@code cache} across runs. Every compiled score played is
+     * stored whole, in whatever format this session produces, and played straight from
+     * the mapped file the next time; while the output is 16-bit mono at the synthesis
+     * rate every chord is stored on its own as well, so a score that shares chords with
+     * one played before renders only the new ones. A score is then flushed to the sink
+     * before and after it plays. Chords are summed in sorted order, with the same effect
+     * on the output as a {@link ChordCache}.
+     *
+     * @param cache the disk cache, or {@code null} to keep nothing on disk.
+     */
+    public void setDiskCache(RenderCache cache) {
+        lock.lock();
+        try {
+            this.diskCache = cache;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the disk cache in use.
+     *
+     * @return the disk cache, or {@code null} if there is none.
+     */
+    public RenderCache getDiskCache() {
+        lock.lock();
+        try {
+            return diskCache;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes out the internal buffer and closes the sink. Playing again afterwards opens
+     * the speaker unless another sink is set first.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            flush();
+            sink().close();
+            sink = null;
+            unpace();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes one sample (between -1.0 and +1.0) to this session.
+     * If the sample is outside the range, it will be clipped.
+     *
+     * @param  sample the sample to play.
+     * @throws IllegalArgumentException if the sample is {@code Double.NaN}.
+     */
+    public void play(double sample) {
+        if (Double.isNaN(sample)) throw new IllegalArgumentException("sample is NaN");
+
+        // Clip if outside [-1, +1].
+        if (sample < -1.0) sample = -1.0;
+        if (sample > +1.0) sample = +1.0;
+
+        // Convert to bytes.
+        short s = (short) (MAX_16_BIT * sample);
+        if (sample == 1.0) s = Short.MAX_VALUE;
+
+        lock.lock();
+        try {
+            drainResampler();
+            if (!pcm16) {
+                single[0] = sample;
+                encode(single, 0, 1);
+                return;
+            }
+            buffer[bufferSize++] = (byte) s;
+            buffer[bufferSize++] = (byte) (s >> 8);
+
+            // Sends to sound card if buffer is full.
+            if (bufferSize >= bufferLimit) {
+                write(buffer, 0, bufferSize);
+                bufferSize = 0;
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes an array of samples (between -1.0 and +1.0) to this session.
+     * If a sample is outside the range, it will be clipped.
+     *
+     * @param  samples the samples to play.
+     * @throws IllegalArgumentException if any sample is {@code Double.NaN}.
+     */
+    public void play(double[] samples) {
+        play(samples, 0, samples.length);
+    }
+
+    /**
+     * Writes {@code len} samples (between -1.0 and +1.0) starting at {@code off} to
+     * this session. The block is clipped and converted in one pass straight into the
+     * internal buffer, which goes to the sink each time it fills.
+     *
+     * @param  samples array holding the samples to play.
+     * @param  off     index of the first sample.
+     * @param  len     number of samples.
+     * @throws IllegalArgumentException if any sample is {@code Double.NaN}; some of the
+     *         samples before it may already have been played.
+     */
+    public void play(double[] samples, int off, int len) {
+        checkRange(samples.length, off, len);
+        lock.lock();
+        try {
+            drainResampler();
+            encode(samples, off, len);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes {@code len} samples (between -1.0 and +1.0) starting at {@code off} to
+     * this session. If a sample is outside the range, it will be clipped.
+     *
+     * @param  samples array holding the samples to play.
+     * @param  off     index of the first sample.
+     * @param  len     number of samples.
+     * @throws IllegalArgumentException if any sample is {@code Float.NaN}; some of the
+     *         samples before it may already have been played.
+     */
+    public void play(float[] samples, int off, int len) {
+        checkRange(samples.length, off, len);
+        lock.lock();
+        try {
+            drainResampler();
+            int end = off + len;
+            while (off < end) {
+                if (pcm16) {
+                    int n = Math.min(end - off, (bufferLimit - bufferSize) / 2);
+                    Pcm.encode(samples, off, buffer, bufferSize, n);
+                    bufferSize += 2 * n;
+                    off += n;
+                    flushIfFull();
+                    continue;
+                }
+                int n = Math.min(end - off, block.length);
+                for (int i = 0; i < n; i++)
+                    block[i] = samples[off + i];
+                encode(block, 0, n);
+                off += n;
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes {@code len} 16-bit PCM samples starting at {@code off} to this session,
+     * without any conversion if the output is 16-bit mono and scaled to the output's
+     * depth otherwise.
+     *
+     * @param samples array holding the samples to play.
+     * @param off     index of the first sample.
+     * @param len     number of samples.
+     */
+    public void play(short[] samples, int off, int len) {
+        checkRange(samples.length, off, len);
+        lock.lock();
+        try {
+            drainResampler();
+            int end = off + len;
+            while (off < end) {
+                if (pcm16) {
+                    int n = Math.min(end - off, (bufferLimit - bufferSize) / 2);
+                    Pcm.encode(samples, off, buffer, bufferSize, n);
+                    bufferSize += 2 * n;
+                    off += n;
+                    flushIfFull();
+                    continue;
+                }
+                int n = Math.min(end - off, block.length);
+                for (int i = 0; i < n; i++)
+                    block[i] = samples[off + i] / MAX_16_BIT;
+                encode(block, 0, n);
+                off += n;
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    // Converts samples into the internal buffer, sending it on each time it fills.
+    private void encode(double[] samples, int off, int len) {
+        int end = off + len;
+        while (off < end) {
+            int n = Math.min(end - off, (bufferLimit - bufferSize) / frameSize);
+            Pcm.encode(samples, off, buffer, bufferSize, n, sampleBytes, channels, bigEndian);
+            bufferSize += n * frameSize;
+            off += n;
+            flushIfFull();
+        }
+    }
+
+    // Sends the internal buffer to the sink once it cannot take another frame.
+    private void flushIfFull() {
+        if (bufferLimit - bufferSize < frameSize) {
+            write(buffer, 0, bufferSize);
+            bufferSize = 0;
+        }
+    }
+
+    private static void checkRange(int length, int off, int len) {
+        if (off < 0 || len < 0 || off > length - len)
+            throw new IndexOutOfBoundsException("off " + off + ", len " + len + ", length " + length);
+    }
+
+    /**
+     * Plays a chord: one sine wave per frequency in {@code hzs}, all lasting
+     * {@code duration} seconds and together reaching {@code amplitude}. The chord is
+     * rendered a block at a time by the selected oscillator, at the synthesis rate.
+     *
+     * @param hzs       the frequencies of the voices.
+     * @param duration  length of the chord in seconds.
+     * @param amplitude the combined peak amplitude of all voices.
+     */
+    public void multiplePlay(double[] hzs, double duration, double amplitude) {
+        amplitude = amplitude / hzs.length;
+        lock.lock();
+        try {
+            int N = (int) (synthesisRate * duration);
+            playChord(hzs, 0, hzs.length, N + 1, amplitude);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    // Plays count voices from hzs[off..] for length samples, each at the given amplitude,
+    // recording how long synthesis took while metrics are enabled.
+    private void playChord(double[] hzs, int off, int count, int length, double amplitude) {
+        if (!metrics.isEnabled()) {
+            synthesizeChord(hzs, off, count, length, amplitude);
+            return;
+        }
+        long called = System.nanoTime();
+        long writesBefore = writeNanos;
+        noteSince = called;
+        if (bufferSize == 0) bufferSince = called;
+        synthesizeChord(hzs, off, count, length, amplitude);
+        long render = System.nanoTime() - called - (writeNanos - writesBefore);
+        metrics.noteRendered(count, length, synthesisRate, render);
+    }
+
+    // With a chord cache set, repeats are copied from the cache instead of synthesized.
+    private void synthesizeChord(double[] hzs, int off, int count, int length, double amplitude) {
+        if (chordsCached()) {
+            if (count > sortedHzs.length) sortedHzs = new double[count];
+            System.arraycopy(hzs, off, sortedHzs, 0, count);
+            Arrays.sort(sortedHzs, 0, count);
+            if (diskCache == null) {
+                byte[] pcm = ScoreRenderer.cachedChord(cache, oscillator, block, sortedHzs, count,
+                                                       sampleRate, length, amplitude);
+                playPcm(pcm, 0, pcm.length);
+            }
+            else playStoredChord(count, length, amplitude);
+            return;
+        }
+        oscillator.start(hzs, off, count, synthesisRate);
+        for (int i = 0; i < length; i += BLOCK_SIZE) {
+            int len = Math.min(BLOCK_SIZE, length - i);
+            oscillator.render(block, 0, len, amplitude);
+            emitBlock(len);
+        }
+    }
+
+    // Sends the first len samples of the block on, resampled if synthesis runs at
+    // another rate.
+    private void emitBlock(int len) {
+        if (resampler == null) encode(block, 0, len);
+        else encode(resampled, 0, resampler.process(block, 0, len, resampled, 0));
+    }
+
+    // Whether chords are replayed from a cache, which needs the cache's layout.
+    private boolean chordsCached() {
+        return (cache != null || diskCache != null) && pcm16 && resampler == null;
+    }
+
+    // Plays the chord in sortedHzs from memory, from disk or freshly rendered, in that
+    // order of preference, storing it wherever it was missing. Without a memory cache a
+    // chord found on disk goes to the sink straight from the mapped file.
+    private void playStoredChord(int count, int length, double amplitude) {
+        OscillatorMode mode = oscillator.mode();
+        byte[] pcm = cache == null ? null : cache.get(sortedHzs, count, length, amplitude, mode, sampleRate);
+        if (pcm == null) {
+            String key = RenderCache.noteKey(sortedHzs, count, length, amplitude, mode, sampleRate);
+            ByteBuffer stored = diskCache.get(key);
+            if (stored != null && stored.remaining() == 2 * length) {
+                if (cache == null) {
+                    flush();
+                    write(stored);
+                    return;
+                }
+                pcm = new byte[2 * length];
+                stored.get(pcm);
+            }
+            else {
+                pcm = new byte[2 * length];
+                oscillator.start(sortedHzs, 0, count, sampleRate);
+                ScoreRenderer.renderChord(oscillator, block, length, amplitude, pcm, 0);
+                diskCache.put(key, pcm, 0, pcm.length);
+            }
+            if (cache != null) cache.put(sortedHzs, count, length, amplitude, mode, sampleRate, pcm);
+        }
+        playPcm(pcm, 0, pcm.length);
+    }
+
+    // Copies finished 16-bit PCM through the internal buffer.
+    private void playPcm(byte[] pcm, int off, int len) {
+        int end = off + len;
+        while (off < end) {
+            int n = Math.min(end - off, bufferLimit - bufferSize) & ~1;
+            System.arraycopy(pcm, off, buffer, bufferSize, n);
+            bufferSize += n;
+            off += n;
+            flushIfFull();
+        }
+    }
+
+    /**
+     * Plays a compiled score from start to finish, rendering each event a block at a
+     * time into the reusable block buffer, or replaying it from the chord cache. With a
+     * disk cache the whole render is stored as it plays, and a score found there is
+     * written to the sink from the mapped file without synthesizing anything. Other
+     * threads using this session wait until the whole score has been played.
+     *
+     * @param score the score; if it was compiled for another rate than the synthesis
+     *              rate, it is compiled again for the synthesis rate.
+     */
+    public void play(CompiledScore score) {
+        lock.lock();
+        try {
+            if (score.sampleRate() != synthesisRate) score = score.score().compile(synthesisRate);
+            if (diskCache == null) {
+                playNotes(score);
+                return;
+            }
+            String key = RenderCache.scoreKey(score, oscillator.mode(), format, chordsCached());
+            ByteBuffer stored = diskCache.get(key);
+            flush();
+            if (stored != null) {
+                write(stored);
+                return;
+            }
+            // Kept in memory and queued once complete, so the disk is written on the cache's
+            // own thread and never while the speaker waits.
+            recording = new Recording(diskCache.maxEntryBytes());
+            try {
+                playNotes(score);
+                flush();
+                if (recording.size >= 0) diskCache.put(key, recording.pcm, 0, recording.size);
+            }
+            finally {
+                recording = null;
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    // A score render collected for the disk cache. Past the most the cache takes in one
+    // entry it is given up, and size becomes -1.
+    private static final class Recording {
+        private final long maxBytes;
+        private byte[] pcm = new byte[1 << 16];
+        private int size;
+
+        Recording(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        void write(byte[] bytes, int off, int len) {
+            if (!reserve(len)) return;
+            System.arraycopy(bytes, off, pcm, size, len);
+            size += len;
+        }
+
+        void write(ByteBuffer bytes) {
+            int len = bytes.remaining();
+            if (!reserve(len)) return;
+            bytes.get(pcm, size, len);
+            size += len;
+        }
+
+        // Makes room for len more bytes; false once the render has outgrown the cache.
+        private boolean reserve(int len) {
+            if (size < 0) return false;
+            if (size + (long) len > maxBytes) {
+                pcm = null;
+                size = -1;
+                return false;
+            }
+            if (size + len > pcm.length)
+                pcm = Arrays.copyOf(pcm, (int) Math.min(maxBytes, Math.max(2L * pcm.length, size + len)));
+            return true;
+        }
+    }
+
+    private void playNotes(CompiledScore score) {
+        Score source = score.score();
+        for (int n = 0; n < score.notes(); n++) {
+            int first = source.voiceOffset(n);
+            playChord(source.frequencies(), first, source.voiceOffset(n + 1) - first,
+                      score.length(n), score.voiceAmplitude(n));
+        }
+    }
+
+    /**
+     * Performs a compiled score on a {@link VoicePool} instead of as block chords: each
+     * event's voices start at the event's first sample, voices the next event holds
+     * carry on with their phase, and the others are released there and fade out over
+     * the next event. After the last event the pool plays on until every voice has
+     * faded. The pool's envelope and harmonics shape the sound; it must render at the
+     * synthesis rate and have room in its event queue for {@link #voicePoolEvents} events.
+     *
+     * @param score the score; if it was compiled for another rate than the synthesis
+     *              rate, it is compiled again for the synthesis rate.
+     * @param pool  the voices to play it on.
+     * @throws IllegalArgumentException if the pool renders at another rate or its event
+     *         queue is too small for the score; nothing is played then.
+     */
+    public void play(CompiledScore score, VoicePool pool) {
+        lock.lock();
+        try {
+            if (pool.sampleRate() != synthesisRate)
+                throw new IllegalArgumentException("voice pool renders at " + pool.sampleRate()
+                        + " Hz, not the synthesis rate of " + synthesisRate + " Hz");
+            if (score.sampleRate() != synthesisRate) score = score.score().compile(synthesisRate);
+            int needed = voicePoolEvents(score);
+            if (pool.eventCapacity() - pool.pendingEvents() < needed)
+                throw new IllegalArgumentException("voice pool has room for " + (pool.eventCapacity() - pool.pendingEvents())
+                        + " events, the score needs " + needed);
+            Score source = score.score();
+            double[] hz = source.frequencies();
+            for (int n = 0; n < score.notes(); n++) {
+                long at = pool.position();
+                int first = source.voiceOffset(n);
+                int last = source.voiceOffset(n + 1);
+                if (n > 0)
+                    for (int v = source.voiceOffset(n - 1); v < first; v++)
+                        if (hz[v] > 0 && !holds(hz, first, last, hz[v])) pool.noteOff(at, Double.hashCode(hz[v]));
+                for (int v = first; v < last; v++)
+                    if (hz[v] > 0) pool.noteOn(at, Double.hashCode(hz[v]), hz[v], score.voiceAmplitude(n));
+                renderPool(pool, score.length(n));
+            }
+            if (score.notes() > 0)
+                for (int v = source.voiceOffset(score.notes() - 1); v < source.voiceOffset(score.notes()); v++)
+                    if (hz[v] > 0) pool.noteOff(pool.position(), Double.hashCode(hz[v]));
+            while (pool.activeVoices() > 0 || pool.pendingEvents() > 0)
+                renderPool(pool, BLOCK_SIZE);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns how many events {@link #play(CompiledScore, VoicePool)} queues on the pool
+     * at once for {@code score}: the note-offs of one event plus the note-ons of the next,
+     * summed over any run of events too short to render a sample.
+     *
+     * @param  score the score, compiled for the rate the pool renders at.
+     * @return the event queue size the pool needs.
+     */
+    public static int voicePoolEvents(CompiledScore score) {
+        Score source = score.score();
+        double[] hz = source.frequencies();
+        int pending = 0;
+        int most = 0;
+        for (int n = 0; n < score.notes(); n++) {
+            int first = source.voiceOffset(n);
+            int last = source.voiceOffset(n + 1);
+            if (n > 0)
+                for (int v = source.voiceOffset(n - 1); v < first; v++)
+                    if (hz[v] > 0 && !holds(hz, first, last, hz[v])) pending++;
+            for (int v = first; v < last; v++)
+                if (hz[v] > 0) pending++;
+            most = Math.max(most, pending);
+            if (score.length(n) > 0) pending = 0;
+        }
+        if (score.notes() > 0)
+            for (int v = source.voiceOffset(score.notes() - 1); v < source.voiceOffset(score.notes()); v++)
+                if (hz[v] > 0) pending++;
+        return Math.max(1, Math.max(most, pending));
+    }
+
+    // Whether hz[from..to) contains frequency f.
+    private static boolean holds(double[] hz, int from, int to, double f) {
+        for (int v = from; v < to; v++)
+            if (hz[v] == f) return true;
+        return false;
+    }
+
+    // Renders length samples of the pool through the block buffer.
+    private void renderPool(VoicePool pool, int length) {
+        for (int i = 0; i < length; i += BLOCK_SIZE) {
+            int len = Math.min(BLOCK_SIZE, length - i);
+            pool.render(block, 0, len);
+            emitBlock(len);
+        }
+    }
+
+    /**
+     * Renders a compiled score on {@code pool}, splitting it along event boundaries, and
+     * then plays the finished audio. The output is identical to {@link #play(CompiledScore)};
+     * this is meant for offline rendering, where the sink does not pace the renderer.
+     * The parallel renderer produces 16-bit mono at the output rate, so other formats and
+     * low-rate synthesis fall back to {@link #play(CompiledScore)}. A disk cache stores
+     * and replays the whole render, but not single chords, so with a disk cache and no
+     * chord cache chords are summed in score order here and in sorted order there.
+     *
+     * @param score the score; if it was compiled for another rate than the synthesis
+     *              rate, it is compiled again for the synthesis rate.
+     * @param pool  the pool to render on.
+     */
+    public void playParallel(CompiledScore score, ForkJoinPool pool) {
+        lock.lock();
+        try {
+            if (!pcm16 || resampler != null) {
+                play(score);
+                return;
+            }
+            if (score.sampleRate() != sampleRate) score = score.score().compile(sampleRate);
+            String key = diskCache == null ? null : RenderCache.scoreKey(score, oscillator.mode(), format, cache != null);
+            ByteBuffer stored = key == null ? null : diskCache.get(key);
+            flush();
+            if (stored != null) {
+                write(stored);
+                return;
+            }
+            byte[] pcm = ScoreRenderer.renderParallel(score, oscillator.mode(), pool, cache);
+            if (key != null) diskCache.put(key, pcm, 0, pcm.length);
+            write(pcm, 0, pcm.length);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+}
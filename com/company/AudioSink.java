@@ -0,0 +1,51 @@
+package com.company;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Destination for the PCM bytes produced by {@link StdAudio}: the sound card,
+ * a file, or anything else that can take a stream of samples.
+ */
+public interface AudioSink {
+
+    /**
+     * Writes {@code len} bytes of PCM audio starting at {@code off}.
+     *
+     * @param bytes array holding the audio.
+     * @param off   index of the first byte.
+     * @param len   number of bytes.
+     */
+    void write(byte[] bytes, int off, int len);
+
+    /**
+     * Writes the remaining bytes of {@code bytes} and moves its position to its limit.
+     * Sinks that can hand a buffer to the operating system as it is, such as a
+     * {@link WavFileSink}, override this so audio mapped from a {@link RenderCache} is
+     * never copied onto the heap; the default copies it through a small array.
+     *
+     * @param bytes buffer holding the audio.
+     */
+    default void write(ByteBuffer bytes) {
+        if (bytes.hasArray()) {
+            write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+            bytes.position(bytes.limit());
+            return;
+        }
+        byte[] chunk = new byte[Math.min(bytes.remaining(), 1 << 16)];
+        while (bytes.hasRemaining()) {
+            int n = Math.min(chunk.length, bytes.remaining());
+            bytes.get(chunk, 0, n);
+            write(chunk, 0, n);
+        }
+    }
+
+    /**
+     * Blocks until everything written so far has been played or stored.
+     */
+    void drain();
+
+    /**
+     * Drains the sink and releases whatever it holds open.
+     */
+    void close();
+}
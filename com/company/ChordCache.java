@@ -0,0 +1,187 @@
+package com.company;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Memoizes rendered chords. A chord is identified by its sorted set of frequencies, its
+ * length in samples, the amplitude of each voice, the oscillator mode and the sample
+ * rate it was synthesized at, so streams at different rates can share one cache; it keeps
+ * the finished 16-bit PCM for it so a repeat can be replayed with one bulk copy instead
+ * of being synthesized again.
+ *
+ * <p>Chords are always rendered with their frequencies in sorted order when a cache is in
+ * use, so a cached segment is exactly what a fresh render of the same key produces. That
+ * order can round the last bit of a sum differently from the order written in the score,
+ * so output with a cache may differ from output without one by one least significant bit
+ * on rare samples.
+ *
+ * <p>The cache holds at most a configured number of PCM bytes and evicts the least
+ * recently used chords beyond that. All methods are synchronized, so one cache can be
+ * shared by the threads of a parallel render.
+ */
+public final class ChordCache {
+
+    private final long maxBytes;
+    private final LinkedHashMap<Key, byte[]> segments = new LinkedHashMap<>(256, 0.75f, true);
+    private final Key probe = new Key();    // Reused for lookups so hits allocate nothing.
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Creates a cache that holds at most {@code maxBytes} bytes of PCM.
+     *
+     * @param maxBytes the memory ceiling.
+     */
+    public ChordCache(long maxBytes) {
+        if (maxBytes < 0) throw new IllegalArgumentException("maxBytes is negative");
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the PCM for a chord, or {@code null} if it is not cached. The returned
+     * array is shared; do not modify it.
+     *
+     * @param  sortedHz   the frequencies, in ascending order.
+     * @param  count      number of frequencies.
+     * @param  length     length of the chord in samples.
+     * @param  amplitude  amplitude of each voice.
+     * @param  mode       the oscillator mode the chord is rendered with.
+     * @param  sampleRate samples per second the chord is rendered at.
+     * @return the cached PCM, or {@code null}.
+     */
+    public synchronized byte[] get(double[] sortedHz, int count, int length, double amplitude,
+                                   OscillatorMode mode, int sampleRate) {
+        probe.set(sortedHz, count, length, amplitude, mode, sampleRate);
+        byte[] pcm = segments.get(probe);
+        if (pcm == null) misses++;
+        else hits++;
+        return pcm;
+    }
+
+    /**
+     * Stores the PCM for a chord, evicting the least recently used chords if that takes
+     * the cache over its ceiling. Chords bigger than the whole ceiling are not stored.
+     *
+     * @param sortedHz   the frequencies, in ascending order.
+     * @param count      number of frequencies.
+     * @param length     length of the chord in samples.
+     * @param amplitude  amplitude of each voice.
+     * @param mode       the oscillator mode the chord was rendered with.
+     * @param sampleRate samples per second the chord was rendered at.
+     * @param pcm        the rendered chord; the cache keeps this array.
+     */
+    public synchronized void put(double[] sortedHz, int count, int length, double amplitude,
+                                 OscillatorMode mode, int sampleRate, byte[] pcm) {
+        if (pcm.length > maxBytes) return;
+        Key key = new Key();
+        key.set(Arrays.copyOf(sortedHz, count), count, length, amplitude, mode, sampleRate);
+        byte[] old = segments.put(key, pcm);
+        if (old != null) bytes -= old.length;
+        bytes += pcm.length;
+        Iterator<Map.Entry<Key, byte[]>> eldest = segments.entrySet().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            bytes -= eldest.next().getValue().length;
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Returns how many lookups found their chord.
+     *
+     * @return the hit count.
+     */
+    public synchronized long hits() {
+        return hits;
+    }
+
+    /**
+     * Returns how many lookups did not find their chord.
+     *
+     * @return the miss count.
+     */
+    public synchronized long misses() {
+        return misses;
+    }
+
+    /**
+     * Returns how many chords have been evicted to stay under the ceiling.
+     *
+     * @return the eviction count.
+     */
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    /**
+     * Returns how many bytes of PCM the cache holds.
+     *
+     * @return the bytes in use.
+     */
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    /**
+     * Returns the memory ceiling.
+     *
+     * @return the most bytes of PCM the cache will hold.
+     */
+    public long maxBytes() {
+        return maxBytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ChordCache[hits=" + hits + ", misses=" + misses + ", evictions=" + evictions
+                + ", bytes=" + bytes + "/" + maxBytes + ", chords=" + segments.size() + "]";
+    }
+
+    // Mutable so the probe can be refilled; keys inside the map are never changed.
+    private static final class Key {
+        private double[] hz;
+        private int count;
+        private int length;
+        private double amplitude;
+        private OscillatorMode mode;
+        private int sampleRate;
+        private int hash;
+
+        void set(double[] hz, int count, int length, double amplitude, OscillatorMode mode, int sampleRate) {
+            this.hz = hz;
+            this.count = count;
+            this.length = length;
+            this.amplitude = amplitude;
+            this.mode = mode;
+            this.sampleRate = sampleRate;
+            int h = 31 * length + Double.hashCode(amplitude);
+            h = 31 * h + mode.hashCode();
+            h = 31 * h + sampleRate;
+            for (int i = 0; i < count; i++)
+                h = 31 * h + Double.hashCode(hz[i]);
+            this.hash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            if (k.hash != hash || k.count != count || k.length != length || k.mode != mode
+                    || k.sampleRate != sampleRate
+                    || Double.compare(k.amplitude, amplitude) != 0) return false;
+            for (int i = 0; i < count; i++)
+                if (Double.compare(k.hz[i], hz[i]) != 0) return false;
+            return true;
+        }
+    }
+}
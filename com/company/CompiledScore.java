@@ -0,0 +1,116 @@
+package com.company;
+
+/**
+ * A {@link Score} laid out in samples at one sample rate: where every event starts, how
+ * many samples it lasts and how loud each of its voices is. Everything lives in flat
+ * primitive arrays shared with the score, so playing it allocates nothing per note.
+ *
+ * <p>Event {@code n} lasts {@code (int) (sampleRate * duration) + 1} samples and every
+ * voice is scaled by {@code amplitude / voices}, the same arithmetic
+ * {@link StdAudio#multiplePlay} uses, so both paths produce the same samples.
+ */
+public final class CompiledScore {
+
+    private final Score score;
+    private final int sampleRate;
+    private final long[] start;              // First sample of every event.
+    private final int[] length;              // Samples in every event.
+    private final double[] voiceAmplitude;   // Amplitude of each voice of every event.
+    private final long totalSamples;
+
+    CompiledScore(Score score, int sampleRate) {
+        this.score = score;
+        this.sampleRate = sampleRate;
+        int notes = score.notes();
+        start = new long[notes];
+        length = new int[notes];
+        voiceAmplitude = new double[notes];
+        long position = 0;
+        for (int n = 0; n < notes; n++) {
+            start[n] = position;
+            length[n] = (int) (sampleRate * score.duration(n)) + 1;
+            int voices = score.voiceOffset(n + 1) - score.voiceOffset(n);
+            voiceAmplitude[n] = voices == 0 ? 0 : score.amplitude(n) / voices;
+            position += length[n];
+        }
+        totalSamples = position;
+    }
+
+    /**
+     * Returns the score this was compiled from.
+     *
+     * @return the source score.
+     */
+    public Score score() {
+        return score;
+    }
+
+    /**
+     * Returns the sample rate the score was compiled for.
+     *
+     * @return samples per second.
+     */
+    public int sampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Returns the number of events.
+     *
+     * @return the event count.
+     */
+    public int notes() {
+        return length.length;
+    }
+
+    /**
+     * Returns the first sample of {@code note}.
+     *
+     * @param  note the event.
+     * @return its start, in samples from the beginning of the piece.
+     */
+    public long start(int note) {
+        return start[note];
+    }
+
+    /**
+     * Returns the number of samples in {@code note}.
+     *
+     * @param  note the event.
+     * @return its length in samples.
+     */
+    public int length(int note) {
+        return length[note];
+    }
+
+    /**
+     * Returns the amplitude each voice of {@code note} is played at.
+     *
+     * @param  note the event.
+     * @return the per-voice amplitude.
+     */
+    public double voiceAmplitude(int note) {
+        return voiceAmplitude[note];
+    }
+
+    /**
+     * Returns the length of the whole piece.
+     *
+     * @return the total number of samples.
+     */
+    public long totalSamples() {
+        return totalSamples;
+    }
+
+    /**
+     * Starts {@code oscillator} on the chord of {@code note}; follow with
+     * {@code oscillator.render(..., voiceAmplitude(note))} for {@code length(note)} samples.
+     *
+     * @param note       the event.
+     * @param oscillator the oscillator to start.
+     */
+    public void startNote(int note, Oscillator oscillator) {
+        int first = score.voiceOffset(note);
+        oscillator.start(score.frequencies(), first, score.voiceOffset(note + 1) - first, sampleRate);
+    }
+}
@@ -0,0 +1,339 @@
+package com.company;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a rendered WAV file up to date with its score by re-synthesizing only the bars
+ * that changed. Every event starts its oscillator at phase 0, so the samples of a bar
+ * depend on nothing but its own events; a bar is fingerprinted by a hash of those
+ * events, and the fingerprints and byte lengths of every bar are kept in a manifest
+ * next to the file ({@code out.wav.bars}).
+ *
+ * <p>On the next render the new fingerprints are matched in order against the manifest,
+ * so bars may also be inserted or deleted. Changed bars are synthesized and written over
+ * their old bytes in place. If an edit alters the length of the piece before an
+ * unchanged bar, that bar is moved within the file, a disk copy that needs no
+ * synthesis, and the header is patched with the new size. The cost of an edit
+ * therefore follows the bars it touches rather than the length of the piece. Without a
+ * manifest that matches the file, the sample rate and the oscillator mode, the whole
+ * piece is rendered. The manifest also records when the file was last modified, so
+ * one that outlived a render by other means is not trusted either.
+ *
+ * <p>The output is 16-bit mono and identical to what {@link StdAudio#play(CompiledScore)}
+ * writes to a {@link WavFileSink}. The manifest is deleted before the file is touched
+ * and written again, atomically, once the file is complete, so a render that is
+ * interrupted leaves no manifest and the next one starts from scratch.
+ */
+public final class IncrementalRenderer {
+
+    private static final String MANIFEST_SUFFIX = ".bars";
+    private static final String MAGIC = "IncrementalRenderer 2";
+    private static final String MODIFIED = "modified ";
+    private static final int MOVE_CHUNK = 1 << 16;
+
+    private IncrementalRenderer() {
+    }
+
+    /**
+     * What an incremental render did.
+     */
+    public static final class Report {
+        private final int bars;
+        private final int rendered;
+        private final int moved;
+        private final long nanos;
+
+        Report(int bars, int rendered, int moved, long nanos) {
+            this.bars = bars;
+            this.rendered = rendered;
+            this.moved = moved;
+            this.nanos = nanos;
+        }
+
+        /**
+         * Returns the number of bars in the score.
+         *
+         * @return the bar count.
+         */
+        public int bars() {
+            return bars;
+        }
+
+        /**
+         * Returns the number of bars synthesized; all of them on a full render.
+         *
+         * @return the bars rendered.
+         */
+        public int rendered() {
+            return rendered;
+        }
+
+        /**
+         * Returns the number of unchanged bars moved to a new position in the file
+         * because bars before them changed length or were inserted or deleted.
+         *
+         * @return the bars moved.
+         */
+        public int moved() {
+            return moved;
+        }
+
+        /**
+         * Returns how long the render took.
+         *
+         * @return nanoseconds.
+         */
+        public long nanos() {
+            return nanos;
+        }
+
+        @Override
+        public String toString() {
+            return "IncrementalRenderer.Report[bars=" + bars + ", rendered=" + rendered + ", moved=" + moved
+                    + ", time=" + nanos / 1_000_000 + " ms]";
+        }
+    }
+
+    /**
+     * Deletes the manifest kept next to {@code wav}, so that the next incremental render
+     * starts from scratch. Call it before writing the file by any other means.
+     *
+     * @param  wav the WAV file.
+     * @throws UncheckedIOException if the manifest exists and cannot be deleted.
+     */
+    public static void forget(Path wav) {
+        try {
+            Files.deleteIfExists(manifest(wav));
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Path manifest(Path wav) {
+        return wav.resolveSibling(wav.getFileName() + MANIFEST_SUFFIX);
+    }
+
+    /**
+     * Brings {@code wav} up to date with {@code score}, re-synthesizing only the bars
+     * that differ from the previous render recorded in its manifest.
+     *
+     * @param  score      the score to render.
+     * @param  wav        the WAV file; created if missing.
+     * @param  mode       how the oscillators generate their sine waves.
+     * @param  sampleRate samples per second.
+     * @return what was rendered.
+     * @throws UncheckedIOException if the file or the manifest cannot be read or written.
+     */
+    public static Report render(Score score, Path wav, OscillatorMode mode, int sampleRate) {
+        long started = System.nanoTime();
+        CompiledScore compiled = score.compile(sampleRate);
+        if (compiled.totalSamples() > (0xFFFFFFFFL - WavFileSink.HEADER_SIZE) / 2)
+            throw new IllegalArgumentException("score too long for a WAV file");
+        int bars = score.bars();
+        String[] fingerprints = new String[bars];
+        long[] lengths = new long[bars];    // Bytes.
+        for (int b = 0; b < bars; b++) {
+            int from = score.barStart(b);
+            int to = score.barStart(b + 1);
+            RenderCache.Digest d = new RenderCache.Digest("bar");
+            d.putEvents(compiled, from, to);
+            fingerprints[b] = d.finish();
+            lengths[b] = 2 * (sampleAt(compiled, to) - sampleAt(compiled, from));
+        }
+        Path manifest = manifest(wav);
+        String header = MAGIC + " " + sampleRate + " " + mode;
+        try {
+            Previous previous = Previous.read(manifest, header, wav);
+            Files.deleteIfExists(manifest);
+            int[] counts;
+            try (FileChannel channel = FileChannel.open(wav, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                                        StandardOpenOption.WRITE)) {
+                counts = update(channel, compiled, mode, fingerprints, lengths, previous);
+            }
+            long modified = Files.getLastModifiedTime(wav).to(TimeUnit.NANOSECONDS);
+            writeManifest(manifest, header, modified, fingerprints, lengths);
+            return new Report(bars, counts[0], counts[1], System.nanoTime() - started);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // First sample of event n; the end of the piece for n == notes().
+    private static long sampleAt(CompiledScore score, int n) {
+        return n == score.notes() ? score.totalSamples() : score.start(n);
+    }
+
+    // Moves the unchanged bars to where they now belong, renders the rest and patches
+    // the header. Returns the number of bars rendered and moved.
+    private static int[] update(FileChannel channel, CompiledScore score, OscillatorMode mode,
+                                String[] fingerprints, long[] lengths, Previous previous) throws IOException {
+        int bars = fingerprints.length;
+        long[] offsets = new long[bars];       // Where each bar goes.
+        long[] sources = new long[bars];       // Where an unchanged bar is now, or -1.
+        long offset = WavFileSink.HEADER_SIZE;
+        for (int b = 0; b < bars; b++) {
+            offsets[b] = offset;
+            offset += lengths[b];
+        }
+        long end = offset;
+        if (previous == null) Arrays.fill(sources, -1);
+        else previous.match(fingerprints, sources);
+
+        // Bars moving towards the end go first, last bar first, then those moving towards
+        // the start, first bar first. Bars keep their order, so neither pass can overwrite
+        // an unchanged bar that has yet to move.
+        int moved = 0;
+        ByteBuffer chunk = ByteBuffer.allocateDirect(MOVE_CHUNK);
+        for (int b = bars - 1; b >= 0; b--)
+            if (sources[b] >= 0 && sources[b] < offsets[b]) {
+                move(channel, sources[b], offsets[b], lengths[b], chunk);
+                moved++;
+            }
+        for (int b = 0; b < bars; b++)
+            if (sources[b] > offsets[b]) {
+                move(channel, sources[b], offsets[b], lengths[b], chunk);
+                moved++;
+            }
+
+        int rendered = 0;
+        Oscillator oscillator = new Oscillator(mode, 8);
+        Score source = score.score();
+        for (int b = 0; b < bars; b++) {
+            if (sources[b] >= 0 || lengths[b] == 0) continue;
+            if (lengths[b] > Integer.MAX_VALUE) throw new IllegalArgumentException("bar " + b + " too long to render");
+            byte[] pcm = new byte[(int) lengths[b]];
+            int from = source.barStart(b);
+            ScoreRenderer.renderNotes(score, oscillator, null, from, source.barStart(b + 1), pcm, score.start(from));
+            writeFully(channel, ByteBuffer.wrap(pcm), offsets[b]);
+            rendered++;
+        }
+
+        AudioFormat format = AudioSession.pcmFormat(score.sampleRate(), 16, 1);
+        writeFully(channel, WavFileSink.header(format, end - WavFileSink.HEADER_SIZE), 0);
+        channel.truncate(end);
+        channel.force(true);
+        return new int[] {rendered, moved};
+    }
+
+    // Copies len bytes from from to to within the file, in the direction that leaves the
+    // source intact until it has been read when the two ranges overlap.
+    private static void move(FileChannel channel, long from, long to, long len, ByteBuffer chunk) throws IOException {
+        long done = 0;
+        while (done < len) {
+            int n = (int) Math.min(chunk.capacity(), len - done);
+            long at = to > from ? len - done - n : done;
+            chunk.clear().limit(n);
+            while (chunk.hasRemaining())
+                if (channel.read(chunk, from + at + chunk.position()) < 0) throw new IOException("file ended early");
+            chunk.flip();
+            writeFully(channel, chunk, to + at);
+            done += n;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer bytes, long position) throws IOException {
+        while (bytes.hasRemaining())
+            position += channel.write(bytes, position);
+    }
+
+    private static void writeManifest(Path manifest, String header, long modified, String[] fingerprints,
+                                      long[] lengths) throws IOException {
+        Path temp = manifest.resolveSibling(manifest.getFileName() + ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            out.write(header);
+            out.newLine();
+            out.write(MODIFIED + modified);
+            out.newLine();
+            for (int b = 0; b < fingerprints.length; b++) {
+                out.write(fingerprints[b] + " " + lengths[b]);
+                out.newLine();
+            }
+        }
+        Files.move(temp, manifest, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // The bars of the previous render, as its manifest describes them.
+    private static final class Previous {
+        private final String[] fingerprints;
+        private final long[] offsets;
+
+        private Previous(String[] fingerprints, long[] offsets) {
+            this.fingerprints = fingerprints;
+            this.offsets = offsets;
+        }
+
+        // Returns null unless the manifest was written for the same rate and mode, the
+        // file has not been modified since, and it is exactly as long as the manifest says.
+        static Previous read(Path manifest, String header, Path wav) throws IOException {
+            List<String> lines;
+            long size;
+            long modified;
+            try {
+                lines = Files.readAllLines(manifest, StandardCharsets.UTF_8);
+                size = Files.size(wav);
+                modified = Files.getLastModifiedTime(wav).to(TimeUnit.NANOSECONDS);
+            }
+            catch (NoSuchFileException e) {
+                return null;
+            }
+            if (lines.size() < 2 || !lines.get(0).equals(header) || !lines.get(1).equals(MODIFIED + modified))
+                return null;
+            int bars = lines.size() - 2;
+            String[] fingerprints = new String[bars];
+            long[] offsets = new long[bars];
+            long offset = WavFileSink.HEADER_SIZE;
+            for (int b = 0; b < bars; b++) {
+                String[] fields = lines.get(b + 2).split(" ");
+                if (fields.length != 2) return null;
+                fingerprints[b] = fields[0];
+                offsets[b] = offset;
+                try {
+                    offset += Long.parseLong(fields[1]);
+                }
+                catch (NumberFormatException e) {
+                    return null;
+                }
+            }
+            return offset == size ? new Previous(fingerprints, offsets) : null;
+        }
+
+        // Pairs the new bars with old ones of the same fingerprint, keeping them in order
+        // and pairing as many as possible (a longest common subsequence), so inserting or
+        // deleting a bar only shifts the bars after it. sources[b] becomes the offset of
+        // new bar b's old copy, or -1 if it has to be rendered.
+        void match(String[] bars, long[] sources) {
+            int n = bars.length;
+            int m = fingerprints.length;
+            int[][] common = new int[n + 1][m + 1];    // Longest common run of bars[i..] and fingerprints[j..].
+            for (int i = n - 1; i >= 0; i--)
+                for (int j = m - 1; j >= 0; j--)
+                    common[i][j] = bars[i].equals(fingerprints[j]) ? common[i + 1][j + 1] + 1
+                                                                   : Math.max(common[i + 1][j], common[i][j + 1]);
+            int i = 0;
+            int j = 0;
+            while (i < n) {
+                if (j < m && bars[i].equals(fingerprints[j]) && common[i][j] == common[i + 1][j + 1] + 1) {
+                    sources[i++] = offsets[j++];
+                }
+                else if (j < m && common[i][j + 1] >= common[i + 1][j]) j++;
+                else sources[i++] = -1;
+            }
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package com.company;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Plays audio through a {@link SourceDataLine} on the default mixer.
+ *
+ * <p>A line opened with {@link #openForLatency} holds a latency budget instead of simply
+ * filling its buffer. Before every write it checks {@code available()} and waits until
+ * the audio queued in the line plus one write chunk stays within the budget, and it
+ * suggests that chunk size to whoever fills it, see {@link #chunkBytes}. A write that
+ * finds the line drained grows the budget by half, up to four times the target; every
+ * ten seconds of audio without one shrinks it by an eighth, back down to the target.
+ * Interactive use can ask for a few tens of milliseconds and only pays for more on a
+ * host that cannot keep up.
+ *
+ * <p>A line opened primed is not started straight away: it takes writes until its buffer
+ * (or its latency budget) is full and only then starts, so playback begins with a full
+ * buffer of audio rendered in advance rather than with whatever the first write held.
+ * Draining or closing it starts it too.
+ *
+ * <p>A line sink is not thread-safe.
+ */
+public final class LineSink implements AudioSink {
+
+    private static final int MAX_GROWTH = 4;             // Budget may grow to this times the target.
+    private static final int STABLE_SECONDS = 10;        // Audio without underruns before shrinking.
+    private static final int MIN_CHUNK_FRAMES = 32;
+
+    private final SourceDataLine line;
+    private final PlaybackMetrics metrics;    // Null when nothing is measured.
+    private final double bytesPerSecond;
+    private final int frameSize;
+    private long written;                     // Bytes written so far.
+
+    private boolean started;                  // False while a primed line fills up.
+
+    private final long targetFrames;          // Latency budget asked for; 0 when not paced.
+    private long budgetFrames;                // Latency budget in force.
+    private long stableFrames;                // Frames written since the budget last changed.
+    private long underruns;                   // Writes that found the line drained.
+
+    private LineSink(SourceDataLine line, PlaybackMetrics metrics, long targetFrames, boolean primed) {
+        this.line = line;
+        this.metrics = metrics;
+        AudioFormat format = line.getFormat();
+        this.bytesPerSecond = format.getFrameRate() * format.getFrameSize();
+        this.frameSize = format.getFrameSize();
+        this.targetFrames = targetFrames;
+        // The line may have been given a smaller buffer than asked for; the budget must
+        // leave room in it for a whole chunk.
+        long capacity = line.getBufferSize() / frameSize;
+        this.budgetFrames = Math.min(targetFrames, capacity + capacity / 3);
+        reportBudget();
+        if (!primed) start();
+    }
+
+    /**
+     * Opens and starts a line for {@code format} with a buffer of {@code bufferBytes}.
+     *
+     * @param  format      the format of the audio that will be written.
+     * @param  bufferBytes size of the line's buffer in bytes.
+     * @return a started line sink.
+     * @throws LineUnavailableException if there is no mixer, or no line supports the format.
+     */
+    public static LineSink open(AudioFormat format, int bufferBytes) throws LineUnavailableException {
+        return open(format, bufferBytes, null);
+    }
+
+    /**
+     * Opens and starts a line for {@code format} with a buffer of {@code bufferBytes},
+     * reporting every write to {@code metrics} while they are enabled.
+     *
+     * @param  format      the format of the audio that will be written.
+     * @param  bufferBytes size of the line's buffer in bytes.
+     * @param  metrics     where to report writes, or {@code null}.
+     * @return a started line sink.
+     * @throws LineUnavailableException if there is no mixer, or no line supports the format.
+     */
+    public static LineSink open(AudioFormat format, int bufferBytes, PlaybackMetrics metrics)
+            throws LineUnavailableException {
+        return open(format, bufferBytes, metrics, false);
+    }
+
+    /**
+     * Opens a line for {@code format} with a buffer of {@code bufferBytes}, reporting every
+     * write to {@code metrics} while they are enabled.
+     *
+     * @param  format      the format of the audio that will be written.
+     * @param  bufferBytes size of the line's buffer in bytes.
+     * @param  metrics     where to report writes, or {@code null}.
+     * @param  primed      whether to wait until the buffer is full before starting the line.
+     * @return a line sink, started unless primed.
+     * @throws LineUnavailableException if there is no mixer, or no line supports the format.
+     */
+    public static LineSink open(AudioFormat format, int bufferBytes, PlaybackMetrics metrics, boolean primed)
+            throws LineUnavailableException {
+        return new LineSink(openLine(format, bufferBytes), metrics, 0, primed);
+    }
+
+    /**
+     * Opens and starts a line for {@code format} that keeps its output latency near
+     * {@code targetMillis}: the audio queued in the line plus one {@link #chunkBytes}
+     * chunk waiting to be written. The line's buffer is sized for the largest budget
+     * underruns can grow it to.
+     *
+     * @param  format       the format of the audio that will be written.
+     * @param  targetMillis the latency to aim for, in milliseconds.
+     * @param  metrics      where to report writes, or {@code null}.
+     * @return a started line sink.
+     * @throws IllegalArgumentException if {@code targetMillis} is not positive.
+     * @throws LineUnavailableException if there is no mixer, or no line supports the format.
+     */
+    public static LineSink openForLatency(AudioFormat format, int targetMillis, PlaybackMetrics metrics)
+            throws LineUnavailableException {
+        return openForLatency(format, targetMillis, metrics, false);
+    }
+
+    /**
+     * Opens a line for {@code format} that keeps its output latency near
+     * {@code targetMillis}, as {@link #openForLatency(AudioFormat, int, PlaybackMetrics)}
+     * does; a primed line starts once the audio written to it fills the latency budget.
+     *
+     * @param  format       the format of the audio that will be written.
+     * @param  targetMillis the latency to aim for, in milliseconds.
+     * @param  metrics      where to report writes, or {@code null}.
+     * @param  primed       whether to wait until the budget is full before starting the line.
+     * @return a line sink, started unless primed.
+     * @throws IllegalArgumentException if {@code targetMillis} is not positive.
+     * @throws LineUnavailableException if there is no mixer, or no line supports the format.
+     */
+    public static LineSink openForLatency(AudioFormat format, int targetMillis, PlaybackMetrics metrics,
+                                          boolean primed) throws LineUnavailableException {
+        if (targetMillis <= 0) throw new IllegalArgumentException("target latency must be positive");
+        long target = Math.max(4L * MIN_CHUNK_FRAMES, (long) Math.ceil(format.getFrameRate() * targetMillis / 1000));
+        long bufferBytes = MAX_GROWTH * target * format.getFrameSize();
+        if (bufferBytes > Integer.MAX_VALUE) throw new IllegalArgumentException("target latency too long");
+        return new LineSink(openLine(format, (int) bufferBytes), metrics, target, primed);
+    }
+
+    // Opens a line with a buffer of bufferBytes, leaving it stopped.
+    private static SourceDataLine openLine(AudioFormat format, int bufferBytes) throws LineUnavailableException {
+        DataLine.Info info = new DataLine.Info(SourceDataLine.class, format);
+        SourceDataLine line;
+        try {
+            line = (SourceDataLine) AudioSystem.getLine(info);
+        }
+        catch (IllegalArgumentException e) {
+            // Thrown instead of LineUnavailableException when no mixer is installed at all.
+            throw new LineUnavailableException(e.getMessage());
+        }
+        line.open(format, bufferBytes);
+        return line;
+    }
+
+    private void start() {
+        line.start(); // Sound is only generated after this line.
+        started = true;
+    }
+
+    /**
+     * Returns whether the line has started playing; a primed line starts once it is full.
+     *
+     * @return whether the line is started.
+     */
+    public boolean isStarted() {
+        return started;
+    }
+
+    /**
+     * Returns the underlying line.
+     *
+     * @return the line audio is written to.
+     */
+    public SourceDataLine line() {
+        return line;
+    }
+
+    /**
+     * Returns how many bytes to hand to {@link #write} at a time: a quarter of the current
+     * latency budget, so the line holds at least half the budget between writes. Lines
+     * opened without a target return their whole buffer size.
+     *
+     * @return the suggested write size, a whole number of frames.
+     */
+    public int chunkBytes() {
+        if (targetFrames == 0) return line.getBufferSize();
+        return (int) Math.max(MIN_CHUNK_FRAMES, budgetFrames / 4) * frameSize;
+    }
+
+    /**
+     * Returns the latency budget currently held, which underruns may have raised above
+     * the target.
+     *
+     * @return milliseconds of audio, or 0 if this line was opened without a target.
+     */
+    public double latencyMillis() {
+        return budgetFrames * frameSize * 1000 / bytesPerSecond;
+    }
+
+    /**
+     * Returns how many writes found the line drained, counted whether or not metrics are
+     * enabled for lines opened with a target.
+     *
+     * @return the underrun count.
+     */
+    public long underruns() {
+        return underruns;
+    }
+
+    // A write that finds the line's buffer completely free, after audio has been written
+    // before, means the sound card ran out of samples: an underrun.
+    @Override
+    public void write(byte[] bytes, int off, int len) {
+        if (targetFrames > 0) {
+            writePaced(bytes, off, len);
+            return;
+        }
+        PlaybackMetrics m = metrics;
+        if (m == null || !m.isEnabled()) {
+            lineWrite(bytes, off, len);
+            written += len;
+            return;
+        }
+        int size = line.getBufferSize();
+        int available = line.available();
+        boolean underrun = written > 0 && available >= size;
+        long start = System.nanoTime();
+        lineWrite(bytes, off, len);
+        long blocked = System.nanoTime() - start;
+        written += len;
+        m.lineWrite(len, available, size, underrun, start, blocked, bytesPerSecond);
+    }
+
+    // Writes a chunk at a time, each once the line has drained far enough for it to fit
+    // in the budget alongside the next chunk.
+    private void writePaced(byte[] bytes, int off, int len) {
+        int end = off + len;
+        int size = line.getBufferSize();
+        while (off < end) {
+            int n = Math.min(end - off, chunkBytes());
+            int available = line.available();
+            boolean underrun = written > 0 && available >= size;
+            adjust(underrun, n / frameSize);
+            long start = System.nanoTime();
+            long limit = (budgetFrames * frameSize) - chunkBytes();
+            long excess;
+            while ((excess = size - available + n - limit) > 0) {
+                if (!started) start();    // A primed line has filled its budget.
+                LockSupport.parkNanos((long) (excess * 1e9 / bytesPerSecond));
+                available = line.available();
+            }
+            lineWrite(bytes, off, n);
+            long blocked = System.nanoTime() - start;
+            written += n;
+            off += n;
+            PlaybackMetrics m = metrics;
+            if (m != null && m.isEnabled()) m.lineWrite(n, available, size, underrun, start, blocked, bytesPerSecond);
+        }
+    }
+
+    // Writes to the line, first starting a primed line if the bytes do not fit in what is
+    // left of its buffer; a stopped line would never make room for them.
+    private void lineWrite(byte[] bytes, int off, int len) {
+        if (!started) {
+            int room = line.available();
+            if (len <= room) {
+                line.write(bytes, off, len);
+                return;
+            }
+            room -= room % frameSize;
+            line.write(bytes, off, room);
+            off += room;
+            len -= room;
+            start();
+        }
+        line.write(bytes, off, len);
+    }
+
+    // Grows the budget after an underrun and shrinks it after a stretch without one.
+    private void adjust(boolean underrun, int frames) {
+        long capacity = line.getBufferSize() / frameSize;
+        if (underrun) {
+            underruns++;
+            budgetFrames = Math.min(Math.min(MAX_GROWTH * targetFrames, capacity + capacity / 3),
+                                    budgetFrames + budgetFrames / 2);
+            stableFrames = 0;
+            reportBudget();
+            return;
+        }
+        stableFrames += frames;
+        if (budgetFrames > targetFrames && stableFrames >= STABLE_SECONDS * bytesPerSecond / frameSize) {
+            budgetFrames = Math.max(targetFrames, budgetFrames - budgetFrames / 8);
+            stableFrames = 0;
+            reportBudget();
+        }
+    }
+
+    private void reportBudget() {
+        if (metrics != null) metrics.latencyBudget((long) (latencyMillis() * 1_000_000));
+    }
+
+    @Override
+    public void drain() {
+        if (!started) start();
+        line.drain();
+    }
+
+    @Override
+    public void close() {
+        if (!started) start();
+        line.drain();
+        line.stop();
+        line.close();
+    }
+}
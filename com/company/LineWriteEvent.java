@@ -0,0 +1,46 @@
+package com.company;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Percentage;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event for one write to the audio line.
+ */
+@Name("com.company.LineWrite")
+@Label("Line Write")
+@Category("StdAudio")
+@Description("One write to the audio line")
+@StackTrace(false)
+final class LineWriteEvent extends jdk.jfr.Event {
+
+    @Label("Bytes")
+    @DataAmount
+    int bytes;
+
+    @Label("Available Before Write")
+    @DataAmount
+    int available;
+
+    @Label("Fill Level Before Write")
+    @Percentage
+    double fillLevel;
+
+    @Label("Underrun")
+    boolean underrun;
+
+    @Label("Blocked")
+    @Description("Time spent inside SourceDataLine.write")
+    @Timespan
+    long blocked;
+
+    @Label("Latency")
+    @Description("From the multiplePlay call to the first sample of this write leaving the line buffer")
+    @Timespan
+    long latency;
+}
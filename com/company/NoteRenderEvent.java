@@ -0,0 +1,35 @@
+package com.company;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event for one chord synthesized by {@link StdAudio}; compare {@code renderTime}
+ * against {@code audioDuration}.
+ */
+@Name("com.company.NoteRender")
+@Label("Note Render")
+@Category("StdAudio")
+@Description("One chord synthesized by StdAudio")
+@StackTrace(false)
+final class NoteRenderEvent extends jdk.jfr.Event {
+
+    @Label("Voices")
+    int voices;
+
+    @Label("Samples")
+    int samples;
+
+    @Label("Audio Duration")
+    @Timespan
+    long audioDuration;
+
+    @Label("Render Time")
+    @Description("Time spent synthesizing, not counting time blocked writing")
+    @Timespan
+    long renderTime;
+}
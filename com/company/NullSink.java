@@ -0,0 +1,40 @@
+package com.company;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Discards everything written to it, only counting the bytes. Useful for measuring
+ * synthesis on its own.
+ */
+public final class NullSink implements AudioSink {
+
+    private long bytes;
+
+    @Override
+    public void write(byte[] bytes, int off, int len) {
+        this.bytes += len;
+    }
+
+    @Override
+    public void write(ByteBuffer bytes) {
+        this.bytes += bytes.remaining();
+        bytes.position(bytes.limit());
+    }
+
+    @Override
+    public void drain() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Returns how many bytes have been written.
+     *
+     * @return the byte count.
+     */
+    public long bytes() {
+        return bytes;
+    }
+}
@@ -0,0 +1,299 @@
+package com.company;
+
+/**
+ * A bank of sine voices that renders a chord one block at a time.
+ * Every voice keeps its own phase accumulator, so rendering a block costs one table
+ * lookup or one complex multiply per voice per sample instead of a {@code Math.sin} call,
+ * depending on the {@link OscillatorMode}.
+ *
+ * <p>An oscillator is not thread-safe; give each rendering thread its own.
+ */
+public final class Oscillator {
+
+    /**
+     * Number of samples a {@link OscillatorMode#ROTATION} voice runs before its
+     * (sin, cos) pair is recomputed from the phase accumulator.
+     */
+    public static final int RESYNC_INTERVAL = 1024;
+
+    private static final int TABLE_BITS = 12;
+    private static final int TABLE_SIZE = 1 << TABLE_BITS;
+
+    // One full cycle plus a guard entry so interpolation never has to wrap.
+    private static final double[] TABLE = new double[TABLE_SIZE + 1];
+
+    static {
+        for (int i = 0; i <= TABLE_SIZE; i++)
+            TABLE[i] = Math.sin(2 * Math.PI * i / TABLE_SIZE);
+    }
+
+    // Taylor coefficients of sin(x) for the POLYNOMIAL mode, and 1.5 * 2^52, which rounds
+    // a double to the nearest integer when added and subtracted again.
+    static final double ROUND = 0x1.8p52;
+    static final double TWO_PI = 2 * Math.PI;
+    static final double S3 = -1.0 / 6;
+    static final double S5 = 1.0 / 120;
+    static final double S7 = -1.0 / 5040;
+    static final double S9 = 1.0 / 362880;
+    static final double S11 = -1.0 / 39916800;
+    static final double S13 = 1.0 / 6227020800L;
+
+    private final OscillatorMode mode;
+
+    private double[] hzs;          // Frequency of every voice.
+    private double[] phase;        // Phase of every voice, in cycles within [0, 1).
+    private double[] increment;    // Phase advance per sample, in cycles.
+    private double[] sin;          // Rotation state: sine of the current phase.
+    private double[] cos;          // Rotation state: cosine of the current phase.
+    private double[] stepSin;      // Rotation state: sine of the per-sample angle.
+    private double[] stepCos;      // Rotation state: cosine of the per-sample angle.
+    private int voices;            // Number of voices in use.
+    private int sampleRate;
+    private long position;         // Samples rendered since start().
+
+    /**
+     * Creates an oscillator with room for {@code maxVoices} voices; it grows if a
+     * bigger chord is started later.
+     *
+     * @param mode      how the sine is generated.
+     * @param maxVoices initial voice capacity.
+     */
+    public Oscillator(OscillatorMode mode, int maxVoices) {
+        if (mode == null) throw new IllegalArgumentException("mode is null");
+        this.mode = mode;
+        allocate(Math.max(1, maxVoices));
+    }
+
+    /**
+     * Returns the mode this oscillator renders with.
+     *
+     * @return the oscillator mode.
+     */
+    public OscillatorMode mode() {
+        return mode;
+    }
+
+    /**
+     * Starts a new chord at phase 0.
+     *
+     * @param hzs        the frequencies to play.
+     * @param sampleRate samples per second.
+     */
+    public void start(double[] hzs, int sampleRate) {
+        start(hzs, 0, hzs.length, sampleRate);
+    }
+
+    /**
+     * Starts a new chord at phase 0, taking {@code count} frequencies from
+     * {@code hzs} beginning at {@code off}.
+     *
+     * @param hzs        array holding the frequencies.
+     * @param off        index of the first frequency.
+     * @param count      number of voices.
+     * @param sampleRate samples per second.
+     */
+    public void start(double[] hzs, int off, int count, int sampleRate) {
+        if (count > phase.length) allocate(count);
+        this.voices = count;
+        this.sampleRate = sampleRate;
+        this.position = 0;
+        for (int v = 0; v < count; v++) {
+            double hz = hzs[off + v];
+            this.hzs[v] = hz;
+            increment[v] = fraction(hz / sampleRate);
+            phase[v] = 0;
+            double angle = 2 * Math.PI * hz / sampleRate;
+            stepSin[v] = Math.sin(angle);
+            stepCos[v] = Math.cos(angle);
+            sin[v] = 0;
+            cos[v] = 1;
+        }
+    }
+
+    /**
+     * Moves the chord {@code samples} samples ahead without rendering them. The
+     * {@link OscillatorMode#SINE} and {@link OscillatorMode#POLYNOMIAL} modes compute every
+     * sample from its index, so they continue exactly as if the skipped samples had been
+     * rendered; the other modes set their phase from the new position directly and stay
+     * within their error bound of the straight render.
+     *
+     * @param samples how far to move ahead.
+     * @throws IllegalArgumentException if {@code samples} is negative.
+     */
+    public void skip(long samples) {
+        if (samples < 0) throw new IllegalArgumentException("cannot skip backwards");
+        position += samples;
+        if (mode == OscillatorMode.SINE || mode == OscillatorMode.POLYNOMIAL) return;
+        for (int v = 0; v < voices; v++) {
+            // Phase after position samples; the rounding error of the product is added back
+            // after the whole cycles are dropped, so long skips keep full precision.
+            double whole = (double) position * increment[v];
+            double error = Math.fma((double) position, increment[v], -whole);
+            double p = fraction(fraction(whole) + error);
+            phase[v] = p;
+            sin[v] = Math.sin(2 * Math.PI * p);
+            cos[v] = Math.cos(2 * Math.PI * p);
+        }
+    }
+
+    /**
+     * Renders the next {@code len} samples of the chord into {@code out}, overwriting it.
+     * Each voice is scaled by {@code amplitude} before being summed, in voice order,
+     * exactly as {@link StdAudio#multiplePlay} always has.
+     *
+     * @param out       destination array.
+     * @param off       index of the first sample to write.
+     * @param len       number of samples to render.
+     * @param amplitude the amplitude of each voice.
+     */
+    public void render(double[] out, int off, int len, double amplitude) {
+        for (int i = off; i < off + len; i++)
+            out[i] = 0;
+        for (int v = 0; v < voices; v++) {
+            switch (mode) {
+                case SINE:
+                    renderSine(v, out, off, len, amplitude);
+                    break;
+                case WAVETABLE:
+                    renderWavetable(v, out, off, len, amplitude);
+                    break;
+                case ROTATION:
+                    renderRotation(v, out, off, len, amplitude);
+                    break;
+                default:
+                    renderPolynomial(v, out, off, len, amplitude);
+                    break;
+            }
+        }
+        position += len;
+    }
+
+    // Reference path: the formula multiplePlay used before there were oscillators.
+    private void renderSine(int v, double[] out, int off, int len, double amplitude) {
+        double hz = hzs[v];
+        long i = position;
+        for (int j = off; j < off + len; j++, i++)
+            out[j] += amplitude * Math.sin(2 * Math.PI * i * hz / sampleRate);
+    }
+
+    private void renderWavetable(int v, double[] out, int off, int len, double amplitude) {
+        double p = phase[v];
+        double inc = increment[v];
+        for (int j = off; j < off + len; j++) {
+            double x = p * TABLE_SIZE;
+            int index = (int) x;
+            double a = TABLE[index];
+            out[j] += amplitude * (a + (x - index) * (TABLE[index + 1] - a));
+            p += inc;
+            if (p >= 1) p -= 1;
+        }
+        phase[v] = p;
+    }
+
+    private void renderRotation(int v, double[] out, int off, int len, double amplitude) {
+        double p = phase[v];
+        double inc = increment[v];
+        double s = sin[v];
+        double c = cos[v];
+        double ss = stepSin[v];
+        double sc = stepCos[v];
+        int untilResync = (int) Math.floorMod(-position, (long) RESYNC_INTERVAL);
+        for (int j = off; j < off + len; j++) {
+            if (untilResync-- == 0) {
+                s = Math.sin(2 * Math.PI * p);
+                c = Math.cos(2 * Math.PI * p);
+                untilResync = RESYNC_INTERVAL - 1;
+            }
+            out[j] += amplitude * s;
+            double next = s * sc + c * ss;
+            c = c * sc - s * ss;
+            s = next;
+            p += inc;
+            if (p >= 1) p -= 1;
+        }
+        phase[v] = p;
+        sin[v] = s;
+        cos[v] = c;
+    }
+
+    private void renderPolynomial(int v, double[] out, int off, int len, double amplitude) {
+        if (VectorSupport.ENABLED) {
+            VectorKernels.addSines(out, off, len, position, increment[v], amplitude);
+            return;
+        }
+        double inc = increment[v];
+        long i = position;
+        for (int j = off; j < off + len; j++, i++)
+            out[j] += sinCycle((double) i * inc) * amplitude;
+    }
+
+    /**
+     * Returns sin(2 * PI * x) for a phase {@code x} in cycles, {@code |x| < 2^51}, using
+     * the same folding and polynomial as the vectorized path, operation for operation,
+     * so both give identical results.
+     *
+     * @param  x the phase in cycles.
+     * @return the sine of the phase.
+     */
+    static double sinCycle(double x) {
+        double t = x - ((x + ROUND) - ROUND);    // Nearest whole cycle removed: t in [-0.5, 0.5].
+        double r = t;
+        if (t > 0.25) r = 0.5 - t;               // sin(PI - a) = sin(a).
+        if (t < -0.25) r = -0.5 - t;
+        double a = TWO_PI * r;                   // Now within [-PI/2, PI/2].
+        double a2 = a * a;
+        return a * (1 + a2 * (S3 + a2 * (S5 + a2 * (S7 + a2 * (S9 + a2 * (S11 + a2 * S13))))));
+    }
+
+    /**
+     * Returns whether {@link OscillatorMode#POLYNOMIAL} and PCM conversion run on the
+     * Java Vector API. That needs {@code --add-modules jdk.incubator.vector} and is turned
+     * off by setting the {@code stdaudio.vector} system property to {@code false}.
+     *
+     * @return true if the vectorized paths are in use.
+     */
+    public static boolean isVectorized() {
+        return VectorSupport.ENABLED;
+    }
+
+    private void allocate(int capacity) {
+        hzs = new double[capacity];
+        phase = new double[capacity];
+        increment = new double[capacity];
+        sin = new double[capacity];
+        cos = new double[capacity];
+        stepSin = new double[capacity];
+        stepCos = new double[capacity];
+    }
+
+    private static double fraction(double x) {
+        return x - Math.floor(x);
+    }
+
+    /**
+     * Measures the largest absolute difference between {@code mode} and the original
+     * {@code Math.sin} formula over {@code samples} samples of a single voice at full
+     * amplitude.
+     *
+     * @param  mode       the mode to measure.
+     * @param  hz         the frequency to test.
+     * @param  sampleRate samples per second.
+     * @param  samples    number of samples to compare.
+     * @return the largest error seen.
+     */
+    public static double maxError(OscillatorMode mode, double hz, int sampleRate, int samples) {
+        Oscillator oscillator = new Oscillator(mode, 1);
+        oscillator.start(new double[]{hz}, sampleRate);
+        double[] block = new double[RESYNC_INTERVAL];
+        double error = 0;
+        for (int i = 0; i < samples; i += block.length) {
+            int len = Math.min(block.length, samples - i);
+            oscillator.render(block, 0, len, 1.0);
+            for (int j = 0; j < len; j++) {
+                double exact = Math.sin(2 * Math.PI * (i + j) * hz / sampleRate);
+                error = Math.max(error, Math.abs(block[j] - exact));
+            }
+        }
+        return error;
+    }
+}
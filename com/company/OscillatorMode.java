@@ -0,0 +1,51 @@
+package com.company;
+
+/**
+ * The ways an {@link Oscillator} can generate a sine wave.
+ */
+public enum OscillatorMode {
+
+    /**
+     * Calls {@code Math.sin} for every voice on every sample. This is exact and
+     * matches the original output bit for bit, but it is by far the slowest mode.
+     */
+    SINE(0.0),
+
+    /**
+     * Looks the phase up in a shared 4096-entry sine table with linear interpolation.
+     * The error is bounded by {@code (2 * PI / 4096)^2 / 8}, well under half of one
+     * 16-bit step.
+     */
+    WAVETABLE(3.0e-7),
+
+    /**
+     * Advances each voice by rotating a (sin, cos) pair with one complex multiply per
+     * sample, and re-seeds the pair from the phase accumulator every
+     * {@link Oscillator#RESYNC_INTERVAL} samples so rounding drift cannot build up.
+     */
+    ROTATION(1.0e-9),
+
+    /**
+     * Evaluates an odd polynomial (Taylor series to x^13) after folding the phase into
+     * a quarter cycle. Every sample is computed independently from its index, so the
+     * mode vectorizes: with {@code jdk.incubator.vector} available several samples are
+     * generated per instruction, and the scalar fallback produces the same bits.
+     */
+    POLYNOMIAL(1.0e-9);
+
+    private final double errorBound;
+
+    OscillatorMode(double errorBound) {
+        this.errorBound = errorBound;
+    }
+
+    /**
+     * Returns the largest absolute difference from {@code Math.sin} that this mode
+     * may produce for one voice at full amplitude.
+     *
+     * @return the error bound per voice.
+     */
+    public double errorBound() {
+        return errorBound;
+    }
+}
@@ -0,0 +1,96 @@
+package com.company;
+
+/**
+ * Conversions from samples in [-1.0, +1.0] to PCM bytes, clipping anything out of range.
+ * Every output path goes through here so they all round exactly the same way. Signed
+ * 16-bit little-endian mono has its own fast paths; {@link #encode(double[], int, byte[],
+ * int, int, int, int, boolean)} handles every other depth and channel count.
+ */
+final class Pcm {
+
+    private static final double MAX_16_BIT = 32768;
+
+    private Pcm() {
+    }
+
+    // Converts len samples from src[srcOff..] into 2 * len bytes at dst[dstOff..], with
+    // the Vector API when it is available and pays off.
+    static void encode(double[] src, int srcOff, byte[] dst, int dstOff, int len) {
+        if (VectorSupport.ENCODE) VectorKernels.encode(src, srcOff, dst, dstOff, len);
+        else encodeScalar(src, srcOff, dst, dstOff, len);
+    }
+
+    // The scalar form of encode(double[], ...), also used for the tail of vector loops.
+    static void encodeScalar(double[] src, int srcOff, byte[] dst, int dstOff, int len) {
+        int b = dstOff;
+        for (int i = srcOff; i < srcOff + len; i++) {
+            double sample = src[i];
+            if (sample != sample) throw new IllegalArgumentException("sample is NaN");
+            short s;
+            if (sample >= 1.0) s = Short.MAX_VALUE;
+            else if (sample <= -1.0) s = Short.MIN_VALUE;
+            else s = (short) (MAX_16_BIT * sample);
+            dst[b++] = (byte) s;
+            dst[b++] = (byte) (s >> 8);
+        }
+    }
+
+    // Converts len samples from src[srcOff..] into 2 * len bytes at dst[dstOff..].
+    static void encode(float[] src, int srcOff, byte[] dst, int dstOff, int len) {
+        int b = dstOff;
+        for (int i = srcOff; i < srcOff + len; i++) {
+            float sample = src[i];
+            if (sample != sample) throw new IllegalArgumentException("sample is NaN");
+            short s;
+            if (sample >= 1.0f) s = Short.MAX_VALUE;
+            else if (sample <= -1.0f) s = Short.MIN_VALUE;
+            else s = (short) (MAX_16_BIT * sample);
+            dst[b++] = (byte) s;
+            dst[b++] = (byte) (s >> 8);
+        }
+    }
+
+    // Copies len samples from src[srcOff..] into 2 * len bytes at dst[dstOff..].
+    static void encode(short[] src, int srcOff, byte[] dst, int dstOff, int len) {
+        int b = dstOff;
+        for (int i = srcOff; i < srcOff + len; i++) {
+            short s = src[i];
+            dst[b++] = (byte) s;
+            dst[b++] = (byte) (s >> 8);
+        }
+    }
+
+    // Converts len samples from src[srcOff..] into len frames at dst[dstOff..], with every
+    // sample copied to all channels. One-byte samples are unsigned, as in WAV files; wider
+    // ones are signed, little- or big-endian. Signed 16-bit little-endian mono takes the
+    // fast path, so it rounds exactly like every other 16-bit output.
+    static void encode(double[] src, int srcOff, byte[] dst, int dstOff, int len,
+                       int sampleBytes, int channels, boolean bigEndian) {
+        if (sampleBytes == 2 && channels == 1 && !bigEndian) {
+            encode(src, srcOff, dst, dstOff, len);
+            return;
+        }
+        double max = 1L << (8 * sampleBytes - 1);
+        long offset = sampleBytes == 1 ? 128 : 0;
+        int b = dstOff;
+        for (int i = srcOff; i < srcOff + len; i++) {
+            double sample = src[i];
+            if (sample != sample) throw new IllegalArgumentException("sample is NaN");
+            long s;
+            if (sample >= 1.0) s = (long) max - 1;
+            else if (sample <= -1.0) s = (long) -max;
+            else s = (long) (max * sample);
+            s += offset;
+            for (int c = 0; c < channels; c++) {
+                if (bigEndian) {
+                    for (int k = sampleBytes - 1; k >= 0; k--)
+                        dst[b++] = (byte) (s >> (8 * k));
+                }
+                else {
+                    for (int k = 0; k < sampleBytes; k++)
+                        dst[b++] = (byte) (s >> (8 * k));
+                }
+            }
+        }
+    }
+}
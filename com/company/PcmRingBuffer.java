@@ -0,0 +1,59 @@
+package com.company;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fixed-size, lock-free ring of PCM bytes for exactly one producer thread and one
+ * consumer thread. The producer only advances {@code tail} and the consumer only
+ * advances {@code head}, so neither ever takes a lock; each publishes its progress
+ * with an ordered store that the other side reads before touching the bytes.
+ */
+final class PcmRingBuffer {
+
+    private final byte[] ring;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();    // Total bytes consumed.
+    private final AtomicLong tail = new AtomicLong();    // Total bytes produced.
+
+    // Capacity is rounded up to a power of two so positions wrap with a mask.
+    PcmRingBuffer(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive");
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) size <<= 1;
+        ring = new byte[size];
+        mask = size - 1;
+    }
+
+    int capacity() {
+        return ring.length;
+    }
+
+    // Number of bytes waiting to be consumed.
+    int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    // Producer side: copies as many of the len bytes as fit and returns how many did.
+    int offer(byte[] bytes, int off, int len) {
+        long t = tail.get();
+        int n = Math.min(len, ring.length - (int) (t - head.get()));
+        int index = (int) (t & mask);
+        int first = Math.min(n, ring.length - index);
+        System.arraycopy(bytes, off, ring, index, first);
+        System.arraycopy(bytes, off + first, ring, 0, n - first);
+        tail.lazySet(t + n);
+        return n;
+    }
+
+    // Consumer side: copies up to len waiting bytes into dst and returns how many it took.
+    int poll(byte[] dst, int off, int len) {
+        long h = head.get();
+        int n = Math.min(len, (int) (tail.get() - h));
+        int index = (int) (h & mask);
+        int first = Math.min(n, ring.length - index);
+        System.arraycopy(ring, index, dst, off, first);
+        System.arraycopy(ring, 0, dst, off + first, n - first);
+        head.lazySet(h + n);
+        return n;
+    }
+}
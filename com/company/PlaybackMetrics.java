@@ -0,0 +1,297 @@
+package com.company;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters that tell whether glitches come from synthesis falling behind or from the
+ * line starving: time spent rendering each note against the audio it produced, the
+ * line's free space and fill level at every write, underruns, time blocked in
+ * {@code SourceDataLine.write}, and the latency from a {@code multiplePlay} call to its
+ * first sample leaving the line buffer.
+ *
+ * <p>Nothing is measured while the metrics are disabled, which is the default; the hot
+ * paths then only read one volatile flag per chord or per write. When enabled the same
+ * measurements are also emitted as the {@code com.company.NoteRender} and
+ * {@code com.company.LineWrite} JFR events, and {@link #register} publishes the counters
+ * through JMX.
+ */
+public final class PlaybackMetrics implements PlaybackMetricsMXBean {
+
+    private volatile boolean enabled;
+
+    private final LongAdder notes = new LongAdder();
+    private final LongAdder samples = new LongAdder();
+    private final LongAdder renderNanos = new LongAdder();
+    private final LongAdder audioNanos = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder blockedNanos = new LongAdder();
+    private final LongAdder underruns = new LongAdder();
+    private final AtomicLong maxLatency = new AtomicLong();
+    private volatile int lastAvailable;
+    private volatile double lastFillLevel;
+    private volatile long lastLatency;
+    private volatile long latencyBudget;
+
+    // When the oldest audio about to be written was asked for; see pending().
+    private volatile long pendingSince;
+
+    /**
+     * Creates disabled metrics.
+     */
+    public PlaybackMetrics() {
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server as
+     * {@code com.company:type=PlaybackMetrics,name=<name>}.
+     *
+     * @param  name distinguishes this instance from others.
+     * @return the name it was registered under.
+     * @throws IllegalStateException if registration fails, for example because the name
+     *         is already taken.
+     */
+    public ObjectName register(String name) {
+        try {
+            ObjectName objectName = new ObjectName("com.company:type=PlaybackMetrics,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            return objectName;
+        }
+        catch (InstanceAlreadyExistsException e) {
+            throw new IllegalStateException("metrics already registered as " + name, e);
+        }
+        catch (JMException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    // Records one chord that took renderNanos to synthesize.
+    void noteRendered(int voices, int sampleCount, int sampleRate, long renderNanos) {
+        long audio = sampleCount * 1_000_000_000L / sampleRate;
+        notes.increment();
+        samples.add(sampleCount);
+        this.renderNanos.add(renderNanos);
+        audioNanos.add(audio);
+        NoteRenderEvent event = new NoteRenderEvent();
+        if (event.isEnabled()) {
+            event.voices = voices;
+            event.samples = sampleCount;
+            event.audioDuration = audio;
+            event.renderTime = renderNanos;
+            event.commit();
+        }
+    }
+
+    // Notes that the audio about to be written was first asked for at nanoTime since.
+    void pending(long since) {
+        pendingSince = since;
+    }
+
+    // Records one write to the line: its free space and total size before the write,
+    // whether it had run dry, when the write started and how long it blocked.
+    void lineWrite(int bytes, int available, int bufferSize, boolean underrun,
+                   long writeStart, long blocked, double bytesPerSecond) {
+        double fill = 1 - (double) available / bufferSize;
+        long queued = (long) ((bufferSize - available) * 1e9 / bytesPerSecond);
+        long since = pendingSince;
+        long latency = since == 0 ? 0 : writeStart - since + queued;
+        writes.increment();
+        blockedNanos.add(blocked);
+        if (underrun) underruns.increment();
+        lastAvailable = available;
+        lastFillLevel = fill;
+        lastLatency = latency;
+        maxLatency.accumulateAndGet(latency, Math::max);
+
+        LineWriteEvent event = new LineWriteEvent();
+        if (event.isEnabled()) {
+            event.bytes = bytes;
+            event.available = available;
+            event.fillLevel = fill;
+            event.underrun = underrun;
+            event.latency = latency;
+            event.blocked = blocked;
+            event.commit();
+        }
+    }
+
+    // Notes the latency budget a paced line is now holding; see LineSink.openForLatency.
+    void latencyBudget(long nanos) {
+        latencyBudget = nanos;
+    }
+
+    /**
+     * Returns the number of chords synthesized.
+     *
+     * @return the note count.
+     */
+    @Override
+    public long getNotesRendered() {
+        return notes.sum();
+    }
+
+    /**
+     * Returns the number of samples synthesized.
+     *
+     * @return the sample count.
+     */
+    @Override
+    public long getSamplesRendered() {
+        return samples.sum();
+    }
+
+    /**
+     * Returns the time spent synthesizing, not counting time blocked in writes.
+     *
+     * @return nanoseconds of synthesis.
+     */
+    @Override
+    public long getRenderNanos() {
+        return renderNanos.sum();
+    }
+
+    /**
+     * Returns how much audio was synthesized.
+     *
+     * @return nanoseconds of audio.
+     */
+    @Override
+    public long getAudioNanos() {
+        return audioNanos.sum();
+    }
+
+    /**
+     * Returns how many times faster than real time synthesis runs; below 1 it cannot
+     * keep up with playback.
+     *
+     * @return audio time divided by synthesis time.
+     */
+    @Override
+    public double getRealtimeRatio() {
+        long render = renderNanos.sum();
+        return render == 0 ? 0 : (double) audioNanos.sum() / render;
+    }
+
+    /**
+     * Returns the number of writes to the line.
+     *
+     * @return the write count.
+     */
+    @Override
+    public long getLineWrites() {
+        return writes.sum();
+    }
+
+    /**
+     * Returns the total time spent blocked writing to the line.
+     *
+     * @return nanoseconds blocked.
+     */
+    @Override
+    public long getWriteBlockedNanos() {
+        return blockedNanos.sum();
+    }
+
+    /**
+     * Returns how many writes found the line buffer completely drained.
+     *
+     * @return the underrun count.
+     */
+    @Override
+    public long getUnderruns() {
+        return underruns.sum();
+    }
+
+    /**
+     * Returns the line's free space before the latest write.
+     *
+     * @return bytes available.
+     */
+    @Override
+    public int getLastAvailableBytes() {
+        return lastAvailable;
+    }
+
+    /**
+     * Returns how full the line buffer was before the latest write.
+     *
+     * @return the fill level, from 0 to 1.
+     */
+    @Override
+    public double getLastFillLevel() {
+        return lastFillLevel;
+    }
+
+    /**
+     * Returns the latency of the latest write: from the call that asked for its first
+     * sample to that sample leaving the line buffer.
+     *
+     * @return nanoseconds of latency.
+     */
+    @Override
+    public long getLastLatencyNanos() {
+        return lastLatency;
+    }
+
+    /**
+     * Returns the largest latency seen.
+     *
+     * @return nanoseconds of latency.
+     */
+    @Override
+    public long getMaxLatencyNanos() {
+        return maxLatency.get();
+    }
+
+    /**
+     * Returns the latency budget the line is holding, which underruns raise above the
+     * target and quiet stretches lower back to it. This is a setting rather than a
+     * counter, so {@link #reset} leaves it alone.
+     *
+     * @return nanoseconds of audio, or 0 if the line was not opened with a target latency.
+     */
+    @Override
+    public long getLatencyBudgetNanos() {
+        return latencyBudget;
+    }
+
+    /**
+     * Zeroes every counter.
+     */
+    @Override
+    public void reset() {
+        notes.reset();
+        samples.reset();
+        renderNanos.reset();
+        audioNanos.reset();
+        writes.reset();
+        blockedNanos.reset();
+        underruns.reset();
+        maxLatency.set(0);
+        lastAvailable = 0;
+        lastFillLevel = 0;
+        lastLatency = 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PlaybackMetrics[notes=%d, realtime=%.1fx, writes=%d, blocked=%d ms, "
+                        + "underruns=%d, maxLatency=%d ms]",
+                getNotesRendered(), getRealtimeRatio(), getLineWrites(), getWriteBlockedNanos() / 1_000_000,
+                getUnderruns(), getMaxLatencyNanos() / 1_000_000);
+    }
+}
@@ -0,0 +1,39 @@
+package com.company;
+
+/**
+ * Management interface of {@link PlaybackMetrics}, as seen through JMX.
+ */
+public interface PlaybackMetricsMXBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    long getNotesRendered();
+
+    long getSamplesRendered();
+
+    long getRenderNanos();
+
+    long getAudioNanos();
+
+    double getRealtimeRatio();
+
+    long getLineWrites();
+
+    long getWriteBlockedNanos();
+
+    long getUnderruns();
+
+    int getLastAvailableBytes();
+
+    double getLastFillLevel();
+
+    long getLastLatencyNanos();
+
+    long getMaxLatencyNanos();
+
+    long getLatencyBudgetNanos();
+
+    void reset();
+}
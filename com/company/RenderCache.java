@@ -0,0 +1,566 @@
+package com.company;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.CRC32C;
+
+/**
+ * Keeps rendered PCM on disk across runs. Rendering is deterministic, so an entry is
+ * named by a SHA-256 hash of everything that goes into it: the event's frequencies,
+ * length and amplitude for one chord ({@link #noteKey}), or every event of a compiled
+ * score for a whole render ({@link #scoreKey}), together with the output format, the
+ * synthesis rate and the oscillator mode. A warm start finds the whole piece under one
+ * key and plays it without synthesizing anything.
+ *
+ * <p>{@link #get} maps the entry's file read-only and returns the mapping, so the PCM
+ * goes from the page cache to the sink without being copied onto the heap; see
+ * {@link AudioSink#write(ByteBuffer)}.
+ *
+ * <p>{@link #put} only queues an entry: a background thread writes whatever is queued
+ * in batches, and until then {@link #get} serves it from memory, so a cold run never
+ * waits for the disk. Every entry is written to a temporary file in the same directory
+ * and atomically renamed into place. Instead of forcing every file to disk, each ends
+ * in a CRC-32C of its PCM that is checked the first time the entry is read in a
+ * process, so data a crash lost turns into a miss, and the directory is synced once per
+ * batch. Temporary files carry the id of the process writing them and are deleted the
+ * next time the directory is opened once that process is gone. Files hold at most a
+ * configured number of bytes together and the least recently used entries beyond that
+ * are deleted; a hit touches its file so the order survives restarts. A failed write
+ * only leaves the entry out of the cache.
+ *
+ * <p>All methods are synchronized, so one cache can be shared by the sessions of a
+ * process. Several processes may share a directory: each only evicts what it knows of,
+ * and an entry another process deleted is simply a miss.
+ */
+public final class RenderCache {
+
+    // Part of every key; bump it whenever rendering changes so old entries stop matching.
+    private static final int VERSION = 2;
+
+    private static final String SUFFIX = ".pcm";
+    private static final String TEMP = ".tmp";
+    private static final int TRAILER = 8;                       // Magic number and CRC-32C after the PCM.
+    private static final int MAGIC = 0x52434332;                // "RCC2".
+    private static final long MAX_QUEUED_BYTES = 64L << 20;     // Beyond this, put() drops entries.
+    private static final Duration ORPHAN_AGE = Duration.ofHours(1);
+    private static final String OWNER = ProcessHandle.current().pid() + "-";
+
+    private final Path directory;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Long> sizes = new LinkedHashMap<>(256, 0.75f, true);
+    private final LinkedHashMap<String, byte[]> queued = new LinkedHashMap<>();
+    private final Set<String> verified = new HashSet<>();    // Entries whose checksum matched.
+    private long queuedBytes;
+    private Thread writer;                                    // Writes the queue; null when it is empty.
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Opens the cache in {@code directory}, creating it if needed, deleting what processes
+     * that are gone left half written and evicting down to {@code maxBytes} if the ceiling
+     * is lower than it was.
+     *
+     * @param  directory where the entries live.
+     * @param  maxBytes  the disk ceiling.
+     * @throws IllegalArgumentException if {@code maxBytes} is negative.
+     * @throws UncheckedIOException if the directory cannot be created or listed.
+     */
+    public RenderCache(Path directory, long maxBytes) {
+        if (maxBytes < 0) throw new IllegalArgumentException("maxBytes is negative");
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        try {
+            Files.createDirectories(directory);
+            List<Path> entries = new ArrayList<>();
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    if (name.contains(TEMP)) {
+                        if (orphaned(file, name)) Files.deleteIfExists(file);
+                    }
+                    else if (name.endsWith(SUFFIX)) entries.add(file);
+                }
+            }
+            // Oldest first, so the access order starts out as the order they were last used.
+            entries.sort(Comparator.comparing(RenderCache::lastModified));
+            for (Path file : entries) {
+                long size = Files.size(file);
+                String name = file.getFileName().toString();
+                sizes.put(name.substring(0, name.length() - SUFFIX.length()), size);
+                bytes += size;
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        evict();
+    }
+
+    // A temporary file is named key.tmpPID-RANDOM. It is orphaned once its process is gone,
+    // or, for a name without one, once it has not been touched for an hour.
+    private static boolean orphaned(Path file, String name) {
+        String owner = name.substring(name.indexOf(TEMP) + TEMP.length());
+        int dash = owner.indexOf('-');
+        if (dash > 0) {
+            try {
+                return ProcessHandle.of(Long.parseLong(owner.substring(0, dash))).isEmpty();
+            }
+            catch (NumberFormatException e) {
+                // Not one of ours; go by its age.
+            }
+        }
+        return lastModified(file).toMillis() < System.currentTimeMillis() - ORPHAN_AGE.toMillis();
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        }
+        catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    /**
+     * Returns the key of one chord rendered as 16-bit mono PCM, the layout of a
+     * {@link ChordCache} segment.
+     *
+     * @param  sortedHz   the frequencies, in ascending order.
+     * @param  count      number of frequencies.
+     * @param  length     length of the chord in samples.
+     * @param  amplitude  amplitude of each voice.
+     * @param  mode       the oscillator mode the chord is rendered with.
+     * @param  sampleRate samples per second.
+     * @return the key, as 64 hexadecimal digits.
+     */
+    public static String noteKey(double[] sortedHz, int count, int length, double amplitude,
+                                 OscillatorMode mode, int sampleRate) {
+        Digest d = new Digest("note");
+        d.putInt(sampleRate);
+        d.putInt(mode.ordinal());
+        d.putInt(length);
+        d.putDouble(amplitude);
+        d.putInt(count);
+        for (int i = 0; i < count; i++)
+            d.putDouble(sortedHz[i]);
+        return d.finish();
+    }
+
+    /**
+     * Returns the key of a whole render of {@code score}.
+     *
+     * @param  score        the score, compiled for the synthesis rate.
+     * @param  mode         the oscillator mode it is rendered with.
+     * @param  format       the output format, whose rate may differ from the score's.
+     * @param  sortedChords whether each chord's voices are summed in ascending order, as
+     *                      they are when chords are cached, rather than in score order.
+     * @return the key, as 64 hexadecimal digits.
+     */
+    public static String scoreKey(CompiledScore score, OscillatorMode mode, AudioFormat format,
+                                  boolean sortedChords) {
+        Digest d = new Digest("score");
+        d.putInt((int) format.getSampleRate());
+        d.putInt(format.getSampleSizeInBits());
+        d.putInt(format.getChannels());
+        d.putInt(format.isBigEndian() ? 1 : 0);
+        d.putInt(score.sampleRate());
+        d.putInt(mode.ordinal());
+        d.putInt(sortedChords ? 1 : 0);
+        d.putEvents(score, 0, score.notes());
+        return d.finish();
+    }
+
+    /**
+     * Returns the PCM stored under {@code key}, mapped read-only, or {@code null} if
+     * there is none. The mapping stays valid after the entry is evicted. An entry still
+     * queued for writing is returned from memory.
+     *
+     * @param  key the entry's key.
+     * @return a read-only buffer positioned at the first byte, or {@code null}.
+     */
+    public synchronized ByteBuffer get(String key) {
+        byte[] pending = queued.get(key);
+        if (pending != null) {
+            hits++;
+            return ByteBuffer.wrap(pending).asReadOnlyBuffer();
+        }
+        Path file = file(key);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) throw new IOException("entry too large to map");
+            ByteBuffer pcm = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (!verified.contains(key)) {
+                if (!intact(pcm)) throw new IOException("entry is damaged");
+                verified.add(key);
+            }
+            if (sizes.put(key, size) == null) bytes += size;    // Written by another process.
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            hits++;
+            return pcm.limit((int) size - TRAILER);
+        }
+        catch (NoSuchFileException e) {
+            Long size = sizes.remove(key);                        // Evicted by another process.
+            if (size != null) bytes -= size;
+        }
+        catch (IOException e) {
+            // Unreadable or damaged; count it as a miss and let the next put replace it.
+            Long size = sizes.remove(key);
+            if (size != null) bytes -= size;
+            delete(file);
+        }
+        misses++;
+        return null;
+    }
+
+    // Whether a mapped entry ends in the trailer that matches its PCM.
+    private static boolean intact(ByteBuffer entry) {
+        int size = entry.limit();
+        if (size < TRAILER || entry.getInt(size - TRAILER) != MAGIC) return false;
+        CRC32C crc = new CRC32C();
+        crc.update(entry.duplicate().limit(size - TRAILER));
+        return entry.getInt(size - TRAILER + 4) == (int) crc.getValue();
+    }
+
+    /**
+     * Queues {@code len} bytes of PCM to be stored under {@code key}, replacing any entry
+     * there, and returns at once; the least recently used entries are evicted if the
+     * entry takes the cache over its ceiling once written. Entries bigger than the whole
+     * ceiling are not stored, and neither is anything put while too much is already
+     * waiting to be written. When the bytes are the whole array, the cache keeps the
+     * array until it is written instead of copying it, so it must not be changed.
+     *
+     * @param  key the entry's key.
+     * @param  pcm array holding the PCM.
+     * @param  off index of the first byte.
+     * @param  len number of bytes.
+     * @return whether the entry was queued.
+     */
+    public synchronized boolean put(String key, byte[] pcm, int off, int len) {
+        if (len + TRAILER > maxBytes || queuedBytes + len > MAX_QUEUED_BYTES) return false;
+        byte[] entry = off == 0 && len == pcm.length ? pcm : Arrays.copyOfRange(pcm, off, off + len);
+        byte[] old = queued.put(key, entry);
+        if (old != null) queuedBytes -= old.length;
+        queuedBytes += len;
+        if (writer == null) {
+            writer = new Thread(this::writeQueued, "RenderCache-writer");
+            writer.setDaemon(true);
+            writer.start();
+        }
+        return true;
+    }
+
+    // The most bytes of PCM put() will ever accept for one entry.
+    long maxEntryBytes() {
+        return Math.min(maxBytes - TRAILER, MAX_QUEUED_BYTES);
+    }
+
+    /**
+     * Blocks until every entry queued by {@link #put} has been written, or has failed to
+     * be. Call it before the process exits, since the writer is a daemon thread.
+     */
+    public synchronized void flush() {
+        try {
+            while (writer != null)
+                wait();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Writer thread: writes the queue a batch at a time until it is empty. Each batch is
+    // written outside the lock, so get() and put() never wait for the disk.
+    private void writeQueued() {
+        while (true) {
+            List<Map.Entry<String, byte[]>> batch = new ArrayList<>();
+            synchronized (this) {
+                if (queued.isEmpty()) {
+                    writer = null;
+                    notifyAll();
+                    return;
+                }
+                for (Map.Entry<String, byte[]> entry : queued.entrySet())
+                    batch.add(new AbstractMap.SimpleImmutableEntry<>(entry));
+            }
+            for (Map.Entry<String, byte[]> entry : batch) {
+                Writer w = begin(entry.getKey());
+                w.write(entry.getValue(), 0, entry.getValue().length);
+                w.commit();
+            }
+            syncDirectory();
+            synchronized (this) {
+                for (Map.Entry<String, byte[]> entry : batch)
+                    if (queued.remove(entry.getKey(), entry.getValue())) queuedBytes -= entry.getValue().length;
+            }
+        }
+    }
+
+    // Makes the renames of a batch durable. Not every platform can open a directory.
+    private void syncDirectory() {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+        catch (IOException e) {
+            // A rename that is lost is a miss next time.
+        }
+    }
+
+    // Starts writing an entry a piece at a time; nothing is visible until it is committed.
+    private Writer begin(String key) {
+        Path temp = directory.resolve(key + TEMP + OWNER + Long.toHexString(ThreadLocalRandom.current().nextLong()));
+        return new Writer(key, temp);
+    }
+
+    // Renames a finished temporary file into place and accounts for it.
+    private synchronized boolean publish(String key, Path temp, long size) {
+        try {
+            Files.move(temp, file(key), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (IOException e) {
+            delete(temp);
+            return false;
+        }
+        Long old = sizes.put(key, size);
+        if (old != null) bytes -= old;
+        bytes += size;
+        verified.add(key);
+        evict();
+        return true;
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> eldest = sizes.entrySet().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            delete(file(entry.getKey()));
+            verified.remove(entry.getKey());
+            bytes -= entry.getValue();
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        }
+        catch (IOException e) {
+            // Still mapped somewhere that forbids deleting it; a later eviction retries.
+        }
+    }
+
+    private Path file(String key) {
+        return directory.resolve(key + SUFFIX);
+    }
+
+    /**
+     * Returns how many lookups found their entry.
+     *
+     * @return the hit count.
+     */
+    public synchronized long hits() {
+        return hits;
+    }
+
+    /**
+     * Returns how many lookups did not find their entry.
+     *
+     * @return the miss count.
+     */
+    public synchronized long misses() {
+        return misses;
+    }
+
+    /**
+     * Returns how many entries have been deleted to stay under the ceiling.
+     *
+     * @return the eviction count.
+     */
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    /**
+     * Returns how many bytes of PCM the cache holds on disk.
+     *
+     * @return the bytes in use.
+     */
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    /**
+     * Returns the disk ceiling.
+     *
+     * @return the most bytes of PCM the cache will hold.
+     */
+    public long maxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Returns the directory the entries live in.
+     *
+     * @return the cache directory.
+     */
+    public Path directory() {
+        return directory;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "RenderCache[hits=" + hits + ", misses=" + misses + ", evictions=" + evictions
+                + ", bytes=" + bytes + "/" + maxBytes + ", entries=" + sizes.size() + "]";
+    }
+
+    // One entry being written. The first failure closes the file and turns every later
+    // call into a no-op, so a full disk never interrupts playback.
+    private final class Writer {
+        private final String key;
+        private final Path temp;
+        private FileChannel channel;
+        private final CRC32C crc = new CRC32C();
+        private long size;
+
+        Writer(String key, Path temp) {
+            this.key = key;
+            this.temp = temp;
+            try {
+                channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            }
+            catch (IOException e) {
+                channel = null;
+            }
+        }
+
+        void write(byte[] pcm, int off, int len) {
+            write(ByteBuffer.wrap(pcm, off, len));
+        }
+
+        void write(ByteBuffer pcm) {
+            if (channel == null) return;
+            size += pcm.remaining();
+            if (size + TRAILER > maxBytes) {
+                abort();
+                return;
+            }
+            crc.update(pcm.duplicate());
+            try {
+                while (pcm.hasRemaining())
+                    channel.write(pcm);
+            }
+            catch (IOException e) {
+                abort();
+            }
+        }
+
+        // Appends the checksum and makes the entry visible; false if anything went wrong
+        // on the way.
+        boolean commit() {
+            if (channel == null) return false;
+            try {
+                ByteBuffer trailer = ByteBuffer.allocate(TRAILER).putInt(MAGIC).putInt((int) crc.getValue()).flip();
+                while (trailer.hasRemaining())
+                    channel.write(trailer);
+                channel.close();
+            }
+            catch (IOException e) {
+                abort();
+                return false;
+            }
+            channel = null;
+            return publish(key, temp, size + TRAILER);
+        }
+
+        // Throws the entry away, unless it was already committed.
+        void abort() {
+            if (channel == null) return;
+            try {
+                channel.close();
+            }
+            catch (IOException e) {
+                // Deleted next.
+            }
+            channel = null;
+            delete(temp);
+        }
+    }
+
+    // Feeds primitives to SHA-256 in a fixed byte order; also fingerprints the bars of an
+    // IncrementalRenderer manifest.
+    static final class Digest {
+        private final MessageDigest sha;
+        private final ByteBuffer scratch = ByteBuffer.allocate(8);
+
+        Digest(String kind) {
+            try {
+                sha = MessageDigest.getInstance("SHA-256");
+            }
+            catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);    // Every JDK has SHA-256.
+            }
+            putInt(VERSION);
+            for (int i = 0; i < kind.length(); i++)
+                sha.update((byte) kind.charAt(i));
+        }
+
+        void putInt(int value) {
+            scratch.clear();
+            sha.update(scratch.putInt(value).array(), 0, 4);
+        }
+
+        void putDouble(double value) {
+            scratch.clear();
+            sha.update(scratch.putDouble(value).array(), 0, 8);
+        }
+
+        // Everything that decides the samples of events [from, to).
+        void putEvents(CompiledScore score, int from, int to) {
+            Score source = score.score();
+            double[] hz = source.frequencies();
+            putInt(to - from);
+            for (int n = from; n < to; n++) {
+                putInt(score.length(n));
+                putDouble(score.voiceAmplitude(n));
+                int last = source.voiceOffset(n + 1);
+                putInt(last - source.voiceOffset(n));
+                for (int v = source.voiceOffset(n); v < last; v++)
+                    putDouble(hz[v]);
+            }
+        }
+
+        String finish() {
+            byte[] hash = sha.digest();
+            StringBuilder hex = new StringBuilder(2 * hash.length);
+            for (byte b : hash)
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            return hex.toString();
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package com.company;
+
+import java.util.Arrays;
+
+/**
+ * Converts a stream of samples from one sample rate to another with a polyphase
+ * windowed-sinc filter, so chords can be synthesized at a low rate and played at the
+ * device rate.
+ *
+ * <p>The ratio is reduced to {@code up / down}. Conceptually the input is padded with
+ * {@code up - 1} zeros between samples, low-pass filtered and then only every
+ * {@code down}-th sample is kept; the filter is split into {@code up} phases of
+ * {@code taps} coefficients so each output costs {@code taps} multiply-adds and the
+ * zeros and discarded samples are never computed. The cutoff sits at 45% of the lower of
+ * the two rates and the window is a Kaiser window with beta 8.
+ *
+ * <p>The filter delays the signal by about half its length, rounded to a whole number of
+ * output samples. The resampler drops that many outputs at the start and {@link #drain}
+ * flushes the same amount at the end, so {@code n} input samples always come out as
+ * {@link #outputLength} samples, exactly in step with the input.
+ *
+ * <p>A resampler is not thread-safe.
+ */
+public final class Resampler {
+
+    private static final double CUTOFF = 0.45;
+    private static final double KAISER_BETA = 8;
+
+    private final int inputRate;
+    private final int outputRate;
+    private final int up;
+    private final int down;
+    private final int taps;
+    private final double[] filter;    // Phase r owns filter[r * taps .. (r + 1) * taps).
+    private final int delay;          // Outputs the filter lags behind the input.
+
+    private final double[] silence;   // Fed in by drain() to push out the delayed samples.
+    private final double[] tail;      // Output of drain() before it is cut to length.
+    private double[] sums;            // One phase of outputs, when upsampling by a whole factor.
+    private double[] window;          // The last taps - 1 inputs, then the block being resampled.
+    private int newest;               // Index in window of the newest input the next output uses.
+    private int phase;                // Filter phase of the next output.
+    private int skip;                 // Outputs still to drop at the start.
+    private long consumed;            // Inputs since the last reset.
+    private long produced;            // Outputs since the last reset.
+
+    /**
+     * Creates a resampler with 16 taps per phase, plenty for previews.
+     *
+     * @param inputRate  samples per second coming in.
+     * @param outputRate samples per second going out.
+     */
+    public Resampler(int inputRate, int outputRate) {
+        this(inputRate, outputRate, 16);
+    }
+
+    /**
+     * Creates a resampler with {@code taps} coefficients per phase. More taps give a
+     * sharper cutoff and cost proportionally more per output sample.
+     *
+     * @param inputRate  samples per second coming in.
+     * @param outputRate samples per second going out.
+     * @param taps       filter length per phase, at least 4; when the output rate is lower than
+     *                   the input rate, proportionally more are used.
+     * @throws IllegalArgumentException if a rate is not positive or there are too few taps.
+     */
+    public Resampler(int inputRate, int outputRate, int taps) {
+        if (inputRate <= 0 || outputRate <= 0) throw new IllegalArgumentException("sample rates must be positive");
+        if (taps < 4) throw new IllegalArgumentException("need at least 4 taps");
+        int gcd = gcd(inputRate, outputRate);
+        this.inputRate = inputRate;
+        this.outputRate = outputRate;
+        this.up = outputRate / gcd;
+        this.down = inputRate / gcd;
+        // Going down, the cutoff drops with the output rate, so the filter needs as many
+        // more taps to span the same stretch of output.
+        this.taps = (int) Math.max(taps, ((long) taps * down + up - 1) / up);
+        this.delay = (up * this.taps - 1) / 2 / down;
+        this.filter = design(up, down, this.taps, delay);
+        this.window = new double[this.taps - 1 + 1024];
+        this.silence = new double[this.taps];
+        this.tail = new double[maxOutput(this.taps)];
+        this.sums = new double[1024];
+        reset();
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    // Builds the prototype low-pass at the padded rate and deals it out into phases, with
+    // each phase's taps reversed in time so process() can walk the input forwards. The
+    // filter is centred on a whole number of output samples, delay * down padded samples
+    // in, so dropping delay outputs leaves the output exactly in step with the input;
+    // anything past twice that is left zero.
+    private static double[] design(int up, int down, int taps, int delay) {
+        int length = up * taps;
+        double cutoff = CUTOFF / Math.max(up, down);    // Cycles per padded sample.
+        int center = delay * down;
+        double i0Beta = besselI0(KAISER_BETA);
+        double[] h = new double[length];
+        double sum = 0;
+        for (int j = 0; j <= 2 * center; j++) {
+            double t = j - center;
+            double x = 2 * cutoff * t;
+            double sinc = x == 0 ? 1 : Math.sin(Math.PI * x) / (Math.PI * x);
+            double w = center == 0 ? 0 : t / center;
+            double kaiser = besselI0(KAISER_BETA * Math.sqrt(Math.max(0, 1 - w * w))) / i0Beta;
+            h[j] = 2 * cutoff * sinc * kaiser;
+            sum += h[j];
+        }
+        double[] filter = new double[length];
+        for (int r = 0; r < up; r++)
+            for (int k = 0; k < taps; k++)
+                filter[r * taps + (taps - 1 - k)] = h[r + k * up] * up / sum;
+        return filter;
+    }
+
+    // Modified Bessel function of the first kind, order 0, by its power series.
+    private static double besselI0(double x) {
+        double term = 1;
+        double sum = 1;
+        double q = x * x / 4;
+        for (int k = 1; term > 1e-12 * sum; k++) {
+            term *= q / ((double) k * k);
+            sum += term;
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the rate samples come in at.
+     *
+     * @return input samples per second.
+     */
+    public int inputRate() {
+        return inputRate;
+    }
+
+    /**
+     * Returns the rate samples go out at.
+     *
+     * @return output samples per second.
+     */
+    public int outputRate() {
+        return outputRate;
+    }
+
+    /**
+     * Returns how many samples {@code inputLength} input samples become once drained.
+     *
+     * @param  inputRate   samples per second coming in.
+     * @param  outputRate  samples per second going out.
+     * @param  inputLength number of input samples.
+     * @return the number of output samples.
+     */
+    public static long outputLength(int inputRate, int outputRate, long inputLength) {
+        int gcd = gcd(inputRate, outputRate);
+        long up = outputRate / gcd;
+        long down = inputRate / gcd;
+        return (inputLength * up + down - 1) / down;
+    }
+
+    /**
+     * Returns the most samples {@link #process} can write for {@code inputLength} inputs,
+     * which is also enough room for {@link #drain}.
+     *
+     * @param  inputLength number of input samples.
+     * @return the output capacity needed.
+     */
+    public int maxOutput(int inputLength) {
+        long n = Math.max(inputLength, taps);
+        return (int) ((n * up + down - 1) / down) + 1;
+    }
+
+    /**
+     * Resamples {@code len} samples of the stream and writes whatever output they
+     * complete to {@code out}.
+     *
+     * @param  in     array holding the next input samples.
+     * @param  off    index of the first input sample.
+     * @param  len    number of input samples.
+     * @param  out    destination, with room for {@link #maxOutput maxOutput(len)} samples.
+     * @param  outOff index of the first output sample.
+     * @return the number of output samples written.
+     */
+    public int process(double[] in, int off, int len, double[] out, int outOff) {
+        int history = taps - 1;
+        if (window.length < history + len) {
+            double[] grown = new double[history + len];
+            System.arraycopy(window, 0, grown, 0, history);
+            window = grown;
+        }
+        System.arraycopy(in, off, window, history, len);
+        if (down == 1) return upsample(len, out, outOff);
+        double[] w = window;
+        double[] f = filter;
+        int limit = history + len;
+        int q = newest;
+        int r = phase;
+        int n = outOff;
+        while (q < limit) {
+            int base = r * taps;
+            int first = q - history;
+            double acc = 0;
+            for (int k = 0; k < taps; k++)
+                acc = Math.fma(w[first + k], f[base + k], acc);
+            if (skip > 0) skip--;
+            else out[n++] = acc;
+            r += down;
+            q += r / up;
+            r %= up;
+        }
+        newest = q - len;
+        phase = r;
+        System.arraycopy(window, len, window, 0, history);
+        consumed += len;
+        produced += n - outOff;
+        return n - outOff;
+    }
+
+    // Integer upsampling, such as 22,050 or 11,025 Hz to 44,100 Hz: every input yields one
+    // output per phase, so each phase is a plain convolution of the window. Working one
+    // phase at a time over the whole block lets the Vector API compute several outputs
+    // per instruction, keeping their sums in registers.
+    private int upsample(int len, double[] out, int outOff) {
+        int history = taps - 1;
+        if (sums.length < len) sums = new double[len];
+        double[] acc = sums;
+        int total = len * up;
+        int dropped = Math.min(skip, total);
+        for (int r = 0; r < up; r++) {
+            if (VectorSupport.ENABLED) VectorKernels.convolve(window, filter, r * taps, taps, acc, len);
+            else convolveScalar(window, filter, r * taps, taps, acc, 0, len);
+            int p = r >= dropped ? 0 : (dropped - r + up - 1) / up;    // First output kept.
+            for (int i = outOff + p * up + r - dropped; p < len; p++, i += up)
+                out[i] = acc[p];
+        }
+        skip -= dropped;
+        System.arraycopy(window, len, window, 0, history);
+        consumed += len;
+        produced += total - dropped;
+        return total - dropped;
+    }
+
+    // acc[p] = sum over k of f[fOff + k] * w[p + k], for p in [from, to).
+    static void convolveScalar(double[] w, double[] f, int fOff, int taps, double[] acc, int from, int to) {
+        for (int p = from; p < to; p++) {
+            double sum = 0;
+            for (int k = 0; k < taps; k++)
+                sum = Math.fma(w[p + k], f[fOff + k], sum);
+            acc[p] = sum;
+        }
+    }
+
+    /**
+     * Flushes the samples still held back by the filter delay, so that everything since
+     * the start or the last drain comes out as exactly {@link #outputLength} samples,
+     * and starts over with a silent history. Does nothing if no input came in since.
+     *
+     * @param  out    destination, with room for {@link #maxOutput maxOutput(0)} samples.
+     * @param  outOff index of the first output sample.
+     * @return the number of output samples written.
+     */
+    public int drain(double[] out, int outOff) {
+        if (consumed == 0) return 0;
+        long expected = (consumed * up + down - 1) / down;
+        int n = 0;
+        while (produced < expected) {
+            long missing = expected - produced;
+            int got = process(silence, 0, taps, tail, 0);
+            int keep = (int) Math.min(got, missing);
+            System.arraycopy(tail, 0, out, outOff + n, keep);
+            n += keep;
+            produced -= got - keep;
+        }
+        reset();
+        return n;
+    }
+
+    /**
+     * Discards the history and anything held back, as if the resampler were new.
+     */
+    public void reset() {
+        Arrays.fill(window, 0);
+        newest = taps - 1;
+        phase = 0;
+        skip = delay;
+        consumed = 0;
+        produced = 0;
+    }
+}
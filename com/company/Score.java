@@ -0,0 +1,428 @@
+package com.company;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * A piece of music as a flat table of chord events, parsed from the text score format.
+ * Every event has a duration in seconds, an amplitude and a run of voices in one shared
+ * frequency array; events are grouped into bars.
+ *
+ * <p>The text format has one event per line: the pitches of the chord, then its
+ * duration, then its dynamic.
+ * <pre>
+ * # A comment.
+ * duration quarter 0.833333
+ * dynamic  mf      0.5
+ *
+ * bar 1
+ * Eb3 G4 Bb4   quarter  mf
+ * rest         0.25     mf
+ * </pre>
+ * Pitches are note names with an optional {@code b} or {@code #} and an octave,
+ * {@code rest}, or a frequency in Hz. Durations and dynamics are names declared with
+ * {@code duration} and {@code dynamic} lines, or plain numbers of seconds and amplitude.
+ * A {@code bar} line starts a new bar; the rest of it is a label and is ignored.
+ *
+ * <p>The parser works on index ranges of the source text and grows primitive arrays
+ * geometrically, so it does not allocate per note.
+ */
+public final class Score {
+
+    // Semitones above C for the letters A to G.
+    private static final int[] LETTER_SEMITONES = {9, 11, 0, 2, 4, 5, 7};
+
+    private final double[] frequencies;    // Every voice of every event, event after event.
+    private final int[] voiceOffset;       // Event n owns frequencies[voiceOffset[n] .. voiceOffset[n + 1]).
+    private final double[] duration;       // Seconds.
+    private final double[] amplitude;      // Amplitude of the whole chord.
+    private final int[] barStart;          // Bar b owns events [barStart[b] .. barStart[b + 1]).
+    private final int notes;
+    private final int bars;
+
+    private Score(double[] frequencies, int[] voiceOffset, double[] duration, double[] amplitude,
+                  int[] barStart, int notes, int bars) {
+        this.frequencies = frequencies;
+        this.voiceOffset = voiceOffset;
+        this.duration = duration;
+        this.amplitude = amplitude;
+        this.barStart = barStart;
+        this.notes = notes;
+        this.bars = bars;
+    }
+
+    /**
+     * Reads a score file.
+     *
+     * @param  path the file to read.
+     * @return the parsed score.
+     * @throws UncheckedIOException if the file cannot be read.
+     * @throws IllegalArgumentException if the file is not a valid score.
+     */
+    public static Score load(Path path) {
+        try {
+            return parse(new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reads a score bundled next to this class, such as {@code "anthem.score"}.
+     *
+     * @param  name the resource name.
+     * @return the parsed score.
+     * @throws IllegalArgumentException if there is no such resource or it is not a valid score.
+     */
+    public static Score loadResource(String name) {
+        try (InputStream in = Score.class.getResourceAsStream(name)) {
+            if (in == null) throw new IllegalArgumentException("no score resource " + name);
+            return parse(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Parses a score from its text form.
+     *
+     * @param  text the score.
+     * @return the parsed score.
+     * @throws IllegalArgumentException if the text is not a valid score; the message
+     *         names the offending line.
+     */
+    public static Score parse(CharSequence text) {
+        return new Parser(text.toString()).parse();
+    }
+
+    /**
+     * Returns this score played faster or slower and louder or softer. The pitches and
+     * bars are shared with this score.
+     *
+     * @param  tempo    speed relative to the written tempo; 2 halves every duration.
+     * @param  dynamics factor applied to every amplitude.
+     * @return the scaled score.
+     * @throws IllegalArgumentException if {@code tempo} is not positive or
+     *         {@code dynamics} is negative.
+     */
+    public Score scaled(double tempo, double dynamics) {
+        if (!(tempo > 0) || Double.isInfinite(tempo)) throw new IllegalArgumentException("tempo must be positive");
+        if (!(dynamics >= 0) || Double.isInfinite(dynamics)) throw new IllegalArgumentException("dynamics must not be negative");
+        double[] scaledDuration = new double[notes];
+        double[] scaledAmplitude = new double[notes];
+        for (int n = 0; n < notes; n++) {
+            scaledDuration[n] = duration[n] / tempo;
+            scaledAmplitude[n] = amplitude[n] * dynamics;
+        }
+        return new Score(frequencies, voiceOffset, scaledDuration, scaledAmplitude, barStart, notes, bars);
+    }
+
+    /**
+     * Turns the durations into sample positions at {@code sampleRate}.
+     *
+     * @param  sampleRate samples per second.
+     * @return the compiled score.
+     */
+    public CompiledScore compile(int sampleRate) {
+        return new CompiledScore(this, sampleRate);
+    }
+
+    /**
+     * Returns the number of events.
+     *
+     * @return the event count.
+     */
+    public int notes() {
+        return notes;
+    }
+
+    /**
+     * Returns the number of bars.
+     *
+     * @return the bar count.
+     */
+    public int bars() {
+        return bars;
+    }
+
+    /**
+     * Returns the index of the first event of {@code bar}; {@code barStart(bars())}
+     * is {@link #notes()}.
+     *
+     * @param  bar the bar, counting from 0.
+     * @return the index of its first event.
+     */
+    public int barStart(int bar) {
+        return barStart[bar];
+    }
+
+    /**
+     * Returns the index into {@link #frequencies()} of the first voice of {@code note};
+     * {@code voiceOffset(notes())} is the total number of voices.
+     *
+     * @param  note the event.
+     * @return the index of its first voice.
+     */
+    public int voiceOffset(int note) {
+        return voiceOffset[note];
+    }
+
+    /**
+     * Returns the shared frequency array. Do not modify it.
+     *
+     * @return the frequency of every voice of every event.
+     */
+    double[] frequencies() {
+        return frequencies;
+    }
+
+    /**
+     * Returns the duration of {@code note} in seconds.
+     *
+     * @param  note the event.
+     * @return its duration.
+     */
+    public double duration(int note) {
+        return duration[note];
+    }
+
+    /**
+     * Returns the amplitude of the whole chord played by {@code note}.
+     *
+     * @param  note the event.
+     * @return its amplitude.
+     */
+    public double amplitude(int note) {
+        return amplitude[note];
+    }
+
+    /**
+     * Returns the frequency of one voice.
+     *
+     * @param  voice index into the shared frequency array.
+     * @return the frequency in Hz.
+     */
+    public double frequency(int voice) {
+        return frequencies[voice];
+    }
+
+    /**
+     * Returns the equal-tempered frequency of a note (A4 = 440 Hz), rounded to 0.01 Hz
+     * like the hand-written table the anthem was first programmed with.
+     *
+     * @param  letter     the note letter, {@code 'A'} to {@code 'G'}.
+     * @param  accidental -1 for flat, 0 for natural, +1 for sharp.
+     * @param  octave     the octave, where C4 is middle C.
+     * @return the frequency in Hz.
+     */
+    public static double pitch(char letter, int accidental, int octave) {
+        int midi = 12 * (octave + 1) + LETTER_SEMITONES[letter - 'A'] + accidental;
+        return Math.round(440 * Math.pow(2, (midi - 69) / 12.0) * 100) / 100.0;
+    }
+
+    // Single-use parser over the source text.
+    private static final class Parser {
+        private final String text;
+        private int pos;
+        private int line = 1;
+
+        private double[] frequencies = new double[256];
+        private int[] voiceOffset = new int[64];
+        private double[] duration = new double[64];
+        private double[] amplitude = new double[64];
+        private int[] barStart = new int[16];
+        private int voices;
+        private int notes;
+        private int bars;
+
+        // Names declared with "duration" and "dynamic" lines.
+        private String[] durationNames = new String[8];
+        private double[] durationValues = new double[8];
+        private int durationCount;
+        private String[] dynamicNames = new String[8];
+        private double[] dynamicValues = new double[8];
+        private int dynamicCount;
+
+        // Start and end of the token most recently read by nextToken().
+        private int tokenStart;
+        private int tokenEnd;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        Score parse() {
+            while (pos < text.length()) {
+                if (nextToken()) {
+                    if (is("duration")) declare(true);
+                    else if (is("dynamic")) declare(false);
+                    else if (is("bar")) startBar();
+                    else event();
+                }
+                skipLine();
+            }
+            if (bars > 0 && barStart[bars - 1] == notes)
+                bars--;    // Drop a trailing empty bar.
+            barStart = ensure(barStart, bars + 1);
+            barStart[bars] = notes;
+            voiceOffset = ensure(voiceOffset, notes + 1);
+            voiceOffset[notes] = voices;
+            return new Score(frequencies, voiceOffset, duration, amplitude, barStart, notes, bars);
+        }
+
+        private void declare(boolean isDuration) {
+            if (!nextToken()) throw error("missing name");
+            String name = text.substring(tokenStart, tokenEnd);
+            if (!nextToken()) throw error("missing value for " + name);
+            double value = number();
+            if (isDuration) {
+                if (durationCount == durationNames.length) {
+                    durationNames = Arrays.copyOf(durationNames, durationCount * 2);
+                    durationValues = Arrays.copyOf(durationValues, durationCount * 2);
+                }
+                durationNames[durationCount] = name;
+                durationValues[durationCount++] = value;
+            }
+            else {
+                if (dynamicCount == dynamicNames.length) {
+                    dynamicNames = Arrays.copyOf(dynamicNames, dynamicCount * 2);
+                    dynamicValues = Arrays.copyOf(dynamicValues, dynamicCount * 2);
+                }
+                dynamicNames[dynamicCount] = name;
+                dynamicValues[dynamicCount++] = value;
+            }
+        }
+
+        private void startBar() {
+            if (bars > 0 && barStart[bars - 1] == notes) return;    // The current bar is still empty.
+            barStart = ensure(barStart, bars + 1);
+            barStart[bars++] = notes;
+        }
+
+        // Reads "pitch pitch ... duration dynamic". The duration and dynamic are only
+        // known once the line ends, so the line is scanned once to find them and then
+        // again to read the pitches in front of them.
+        private void event() {
+            int lineStart = tokenStart;
+            int durationStart = -1, durationEnd = -1;
+            int dynamicStart = tokenStart, dynamicEnd = tokenEnd;
+            int count = 1;
+            while (nextToken()) {
+                durationStart = dynamicStart;
+                durationEnd = dynamicEnd;
+                dynamicStart = tokenStart;
+                dynamicEnd = tokenEnd;
+                count++;
+            }
+            if (count < 3) throw error("expected pitches, a duration and a dynamic");
+            int lineEnd = pos;
+
+            pos = lineStart;
+            int first = voices;
+            frequencies = ensure(frequencies, voices + count - 2);
+            for (int i = 0; i < count - 2; i++) {
+                nextToken();
+                frequencies[voices++] = pitch();
+            }
+            tokenStart = durationStart;
+            tokenEnd = durationEnd;
+            double seconds = lookup(durationNames, durationValues, durationCount);
+            if (seconds < 0) throw error("negative duration");
+            tokenStart = dynamicStart;
+            tokenEnd = dynamicEnd;
+            double amp = lookup(dynamicNames, dynamicValues, dynamicCount);
+            pos = lineEnd;
+
+            if (bars == 0) startBar();
+            voiceOffset = ensure(voiceOffset, notes + 1);
+            duration = ensure(duration, notes + 1);
+            amplitude = ensure(amplitude, notes + 1);
+            voiceOffset[notes] = first;
+            duration[notes] = seconds;
+            amplitude[notes] = amp;
+            notes++;
+        }
+
+        // Parses the current token as a note name, "rest" or a frequency.
+        private double pitch() {
+            if (is("rest")) return 0;
+            char letter = text.charAt(tokenStart);
+            if (letter < 'A' || letter > 'G') return number();
+            int i = tokenStart + 1;
+            int accidental = 0;
+            if (i < tokenEnd && text.charAt(i) == 'b') { accidental = -1; i++; }
+            else if (i < tokenEnd && text.charAt(i) == '#') { accidental = 1; i++; }
+            if (i == tokenEnd) throw error("missing octave");
+            int octave = 0;
+            for (; i < tokenEnd; i++) {
+                char c = text.charAt(i);
+                if (c < '0' || c > '9') throw error("bad pitch");
+                octave = octave * 10 + (c - '0');
+            }
+            return Score.pitch(letter, accidental, octave);
+        }
+
+        // Resolves the current token against declared names, or parses it as a number.
+        private double lookup(String[] names, double[] values, int count) {
+            int len = tokenEnd - tokenStart;
+            for (int i = 0; i < count; i++)
+                if (names[i].length() == len && text.regionMatches(tokenStart, names[i], 0, len))
+                    return values[i];
+            return number();
+        }
+
+        private double number() {
+            try {
+                return Double.parseDouble(text.substring(tokenStart, tokenEnd));
+            }
+            catch (NumberFormatException e) {
+                throw error("unknown name or bad number");
+            }
+        }
+
+        private boolean is(String word) {
+            return tokenEnd - tokenStart == word.length() && text.regionMatches(tokenStart, word, 0, word.length());
+        }
+
+        // Reads the next whitespace-separated token on the current line. Returns false at
+        // the end of the line or at a comment.
+        private boolean nextToken() {
+            while (pos < text.length() && (text.charAt(pos) == ' ' || text.charAt(pos) == '\t' || text.charAt(pos) == '\r'))
+                pos++;
+            if (pos >= text.length() || text.charAt(pos) == '\n' || text.charAt(pos) == '#')
+                return false;
+            tokenStart = pos;
+            while (pos < text.length() && !Character.isWhitespace(text.charAt(pos)) && text.charAt(pos) != '#')
+                pos++;
+            tokenEnd = pos;
+            return true;
+        }
+
+        private void skipLine() {
+            while (pos < text.length() && text.charAt(pos) != '\n')
+                pos++;
+            pos++;
+            line++;
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException("score line " + line + ": " + message + " at '"
+                    + text.substring(tokenStart, tokenEnd) + "'");
+        }
+
+        private static double[] ensure(double[] array, int size) {
+            return size <= array.length ? array : Arrays.copyOf(array, Math.max(size, array.length * 2));
+        }
+
+        private static int[] ensure(int[] array, int size) {
+            return size <= array.length ? array : Arrays.copyOf(array, Math.max(size, array.length * 2));
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.company;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Renders a whole {@link CompiledScore} offline into one 16-bit PCM buffer.
+ *
+ * <p>Every event starts its oscillator at phase 0, so each event's samples depend on
+ * nothing but the event itself. The parallel renderer exploits that: it splits the
+ * events into ranges, renders them on a {@link ForkJoinPool} into disjoint slices of
+ * one preallocated buffer, and the slices already sit in order when the tasks finish.
+ * The result is bit-identical to {@link #render}.
+ */
+public final class ScoreRenderer {
+
+    private static final int BLOCK_SIZE = 1024;
+
+    // Ranges are split until they hold fewer samples than this.
+    private static final long LEAF_SAMPLES = 1 << 16;
+
+    private ScoreRenderer() {
+    }
+
+    /**
+     * Renders {@code score} on the calling thread.
+     *
+     * @param  score the score to render.
+     * @param  mode  how the oscillators generate their sine waves.
+     * @return the whole piece as 16-bit little-endian PCM.
+     */
+    public static byte[] render(CompiledScore score, OscillatorMode mode) {
+        return render(score, mode, null);
+    }
+
+    /**
+     * Renders {@code score} on the calling thread, replaying repeated chords from
+     * {@code cache}.
+     *
+     * @param  score the score to render.
+     * @param  mode  how the oscillators generate their sine waves.
+     * @param  cache the chord cache, or {@code null} to synthesize every event.
+     * @return the whole piece as 16-bit little-endian PCM.
+     */
+    public static byte[] render(CompiledScore score, OscillatorMode mode, ChordCache cache) {
+        byte[] pcm = allocate(score);
+        renderNotes(score, new Oscillator(mode, 8), cache, 0, score.notes(), pcm);
+        return pcm;
+    }
+
+    /**
+     * Renders {@code score} on {@code pool}, splitting it along event boundaries.
+     *
+     * @param  score the score to render.
+     * @param  mode  how the oscillators generate their sine waves.
+     * @param  pool  the pool to render on.
+     * @return the whole piece as 16-bit little-endian PCM, identical to {@link #render}.
+     */
+    public static byte[] renderParallel(CompiledScore score, OscillatorMode mode, ForkJoinPool pool) {
+        return renderParallel(score, mode, pool, null);
+    }
+
+    /**
+     * Renders {@code score} on {@code pool}, splitting it along event boundaries and
+     * replaying repeated chords from {@code cache}.
+     *
+     * @param  score the score to render.
+     * @param  mode  how the oscillators generate their sine waves.
+     * @param  pool  the pool to render on.
+     * @param  cache the chord cache, or {@code null} to synthesize every event.
+     * @return the whole piece as 16-bit little-endian PCM, identical to {@link #render}
+     *         with the same cache setting.
+     */
+    public static byte[] renderParallel(CompiledScore score, OscillatorMode mode, ForkJoinPool pool,
+                                        ChordCache cache) {
+        byte[] pcm = allocate(score);
+        pool.invoke(new RenderTask(score, mode, cache, 0, score.notes(), pcm));
+        return pcm;
+    }
+
+    private static byte[] allocate(CompiledScore score) {
+        if (score.totalSamples() > Integer.MAX_VALUE / 2)
+            throw new IllegalArgumentException("score too long to render into one buffer");
+        return new byte[(int) score.totalSamples() * 2];
+    }
+
+    // Renders events [from, to) into their slice of pcm.
+    static void renderNotes(CompiledScore score, Oscillator oscillator, ChordCache cache,
+                            int from, int to, byte[] pcm) {
+        renderNotes(score, oscillator, cache, from, to, pcm, 0);
+    }
+
+    // Renders events [from, to) into pcm, which starts at sample origin of the piece.
+    static void renderNotes(CompiledScore score, Oscillator oscillator, ChordCache cache,
+                            int from, int to, byte[] pcm, long origin) {
+        Score source = score.score();
+        double[] block = new double[BLOCK_SIZE];
+        double[] sorted = new double[8];
+        for (int n = from; n < to; n++) {
+            int out = (int) (score.start(n) - origin) * 2;
+            if (cache == null) {
+                score.startNote(n, oscillator);
+                renderChord(oscillator, block, score.length(n), score.voiceAmplitude(n), pcm, out);
+                continue;
+            }
+            int first = source.voiceOffset(n);
+            int count = source.voiceOffset(n + 1) - first;
+            if (count > sorted.length) sorted = new double[count];
+            System.arraycopy(source.frequencies(), first, sorted, 0, count);
+            Arrays.sort(sorted, 0, count);
+            byte[] segment = cachedChord(cache, oscillator, block, sorted, count,
+                                         score.sampleRate(), score.length(n), score.voiceAmplitude(n));
+            System.arraycopy(segment, 0, pcm, out, segment.length);
+        }
+    }
+
+    // Returns the PCM for a chord from the cache, rendering and storing it on a miss.
+    // The frequencies must already be sorted.
+    static byte[] cachedChord(ChordCache cache, Oscillator oscillator, double[] block, double[] sortedHz,
+                              int count, int sampleRate, int length, double amplitude) {
+        byte[] segment = cache.get(sortedHz, count, length, amplitude, oscillator.mode(), sampleRate);
+        if (segment == null) {
+            segment = new byte[2 * length];
+            oscillator.start(sortedHz, 0, count, sampleRate);
+            renderChord(oscillator, block, length, amplitude, segment, 0);
+            cache.put(sortedHz, count, length, amplitude, oscillator.mode(), sampleRate, segment);
+        }
+        return segment;
+    }
+
+    // Renders length samples of a started oscillator as PCM into pcm[out..].
+    static void renderChord(Oscillator oscillator, double[] block, int length, double amplitude,
+                            byte[] pcm, int out) {
+        for (int i = 0; i < length; i += block.length) {
+            int len = Math.min(block.length, length - i);
+            oscillator.render(block, 0, len, amplitude);
+            Pcm.encode(block, 0, pcm, out, len);
+            out += 2 * len;
+        }
+    }
+
+    private static final class RenderTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final CompiledScore score;
+        private final OscillatorMode mode;
+        private final ChordCache cache;
+        private final int from;
+        private final int to;
+        private final byte[] pcm;
+
+        RenderTask(CompiledScore score, OscillatorMode mode, ChordCache cache, int from, int to, byte[] pcm) {
+            this.score = score;
+            this.mode = mode;
+            this.cache = cache;
+            this.from = from;
+            this.to = to;
+            this.pcm = pcm;
+        }
+
+        @Override
+        protected void compute() {
+            long end = to == score.notes() ? score.totalSamples() : score.start(to);
+            if (to - from <= 1 || end - score.start(from) <= LEAF_SAMPLES) {
+                renderNotes(score, new Oscillator(mode, 8), cache, from, to, pcm);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new RenderTask(score, mode, cache, from, mid, pcm),
+                      new RenderTask(score, mode, cache, mid, to, pcm));
+        }
+    }
+}
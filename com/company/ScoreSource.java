@@ -0,0 +1,254 @@
+package com.company;
+
+import java.util.Spliterator;
+import java.util.function.DoubleConsumer;
+import java.util.stream.DoubleStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Pulls the samples of a {@link CompiledScore} on demand instead of having them pushed
+ * into a sink. Nothing is rendered until it is asked for, and only as much as is asked
+ * for: {@link #read} fills the caller's array straight from the oscillator, so a source
+ * holds one oscillator and never more than the block being read.
+ *
+ * <p>{@link #seek} jumps to any sample without rendering what comes before it. Every
+ * event starts its oscillator at phase 0, so the source only has to start the event the
+ * sample falls in and move its oscillator ahead within that one event; see
+ * {@link Oscillator#skip} for how exact that is in each mode. Read from the start, a
+ * source produces the same samples as {@link StdAudio#play(CompiledScore)} before they
+ * are clipped and converted.
+ *
+ * <p>The same property lets {@link #spliterator} split the piece at event boundaries:
+ * each half starts its own events from phase 0, so a parallel {@link DoubleStream}
+ * sees exactly the samples a sequential one does.
+ *
+ * <p>A source is not thread-safe, but the spliterators it hands out are independent of
+ * it and of each other.
+ */
+public final class ScoreSource {
+
+    private static final int BLOCK_SIZE = 1024;
+
+    private final CompiledScore score;
+    private final Oscillator oscillator;
+    private final long end;        // One past the last sample this source reads.
+    private long position;         // Next sample to read.
+    private int note = -1;         // Event the oscillator is playing.
+    private int remaining;         // Samples of that event still to read.
+
+    /**
+     * Creates a source positioned at the first sample of {@code score}.
+     *
+     * @param score the score to read.
+     * @param mode  how the oscillator generates its sine waves.
+     */
+    public ScoreSource(CompiledScore score, OscillatorMode mode) {
+        this(score, mode, 0, score.totalSamples());
+    }
+
+    private ScoreSource(CompiledScore score, OscillatorMode mode, long from, long to) {
+        this.score = score;
+        this.oscillator = new Oscillator(mode, 8);
+        this.end = to;
+        seek(from);
+    }
+
+    /**
+     * Returns the score this source reads.
+     *
+     * @return the compiled score.
+     */
+    public CompiledScore score() {
+        return score;
+    }
+
+    /**
+     * Returns the oscillator mode this source renders with.
+     *
+     * @return the oscillator mode.
+     */
+    public OscillatorMode mode() {
+        return oscillator.mode();
+    }
+
+    /**
+     * Returns the index of the next sample {@link #read} will return.
+     *
+     * @return the position, in samples from the beginning of the piece.
+     */
+    public long position() {
+        return position;
+    }
+
+    /**
+     * Returns the length of the piece.
+     *
+     * @return the total number of samples.
+     */
+    public long length() {
+        return end;
+    }
+
+    /**
+     * Moves to {@code sample} without rendering anything before it.
+     *
+     * @param sample the next sample to read; {@link #length()} moves to the end.
+     * @throws IllegalArgumentException if {@code sample} is outside {@code [0, length()]}.
+     */
+    public void seek(long sample) {
+        if (sample < 0 || sample > end)
+            throw new IllegalArgumentException("sample " + sample + " outside [0, " + end + "]");
+        position = sample;
+        int n = noteAt(score, sample);
+        if (n < 0) {
+            note = score.notes();
+            remaining = 0;
+            return;
+        }
+        note = n;
+        long into = sample - score.start(n);
+        score.startNote(n, oscillator);
+        oscillator.skip(into);
+        remaining = (int) (score.length(n) - into);
+    }
+
+    // Returns the event holding sample, or -1 at the end of the piece.
+    private static int noteAt(CompiledScore score, long sample) {
+        if (sample >= score.totalSamples()) return -1;
+        int low = 0;
+        int high = score.notes() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (score.start(mid) <= sample) low = mid;
+            else high = mid - 1;
+        }
+        return low;
+    }
+
+    /**
+     * Renders up to {@code len} of the next samples into {@code out}, overwriting it.
+     * Samples are the sum of the voices, not clipped to [-1, +1].
+     *
+     * @param  out destination array.
+     * @param  off index of the first sample to write.
+     * @param  len most samples to read.
+     * @return the number of samples read, which is only less than {@code len} at the
+     *         end of the piece, or -1 if the piece had already ended.
+     */
+    public int read(double[] out, int off, int len) {
+        if (off < 0 || len < 0 || off > out.length - len)
+            throw new IndexOutOfBoundsException("off " + off + ", len " + len + ", length " + out.length);
+        if (len == 0) return 0;
+        if (position >= end) return -1;
+        int done = 0;
+        while (done < len && position < end) {
+            if (remaining == 0) {
+                note++;
+                score.startNote(note, oscillator);
+                remaining = score.length(note);
+            }
+            int n = (int) Math.min(Math.min(remaining, len - done), end - position);
+            oscillator.render(out, off + done, n, score.voiceAmplitude(note));
+            done += n;
+            remaining -= n;
+            position += n;
+        }
+        return done;
+    }
+
+    /**
+     * Returns a spliterator over the samples from {@link #position()} to the end. It
+     * renders with its own oscillator, so reading it does not move this source, and
+     * splits only at event boundaries.
+     *
+     * @return a sized, ordered spliterator over the remaining samples.
+     */
+    public Spliterator.OfDouble spliterator() {
+        return new Samples(score, oscillator.mode(), position, end);
+    }
+
+    /**
+     * Returns the samples from {@link #position()} to the end as a stream. Call
+     * {@code parallel()} on it to render the events on the common fork/join pool.
+     *
+     * @return a sequential stream of the remaining samples.
+     */
+    public DoubleStream stream() {
+        return StreamSupport.doubleStream(spliterator(), false);
+    }
+
+    // Renders [from, to) a block at a time; the source is created on the first advance so
+    // splitting allocates nothing but the halves.
+    private static final class Samples implements Spliterator.OfDouble {
+        private final CompiledScore score;
+        private final OscillatorMode mode;
+        private long from;
+        private final long to;
+        private ScoreSource source;
+        private double[] block;
+        private int index;
+        private int filled;
+
+        Samples(CompiledScore score, OscillatorMode mode, long from, long to) {
+            this.score = score;
+            this.mode = mode;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public boolean tryAdvance(DoubleConsumer action) {
+            if (index == filled && !fill()) return false;
+            action.accept(block[index++]);
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(DoubleConsumer action) {
+            do {
+                double[] b = block;
+                for (int i = index; i < filled; i++)
+                    action.accept(b[i]);
+                index = filled;
+            } while (fill());
+        }
+
+        // Renders the next block; false at the end of the range.
+        private boolean fill() {
+            if (source == null) {
+                if (from >= to) return false;
+                source = new ScoreSource(score, mode, from, to);
+                block = new double[BLOCK_SIZE];
+            }
+            int n = source.read(block, 0, block.length);
+            if (n <= 0) return false;
+            index = 0;
+            filled = n;
+            return true;
+        }
+
+        @Override
+        public Spliterator.OfDouble trySplit() {
+            if (source != null) return null;    // Already rendering.
+            long mid = (from + to) >>> 1;
+            int n = noteAt(score, mid);
+            if (n < 0) return null;
+            long boundary = score.start(n);
+            if (mid - boundary > score.length(n) / 2 && n + 1 < score.notes()) boundary = score.start(n + 1);
+            if (boundary <= from || boundary >= to) return null;
+            Samples prefix = new Samples(score, mode, from, boundary);
+            from = boundary;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return source == null ? to - from : to - source.position() + (filled - index);
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+        }
+    }
+}
@@ -1,11 +1,15 @@
 package com.company;
 
 import javax.sound.sampled.AudioFormat;
-import javax.sound.sampled.AudioSystem;
-import javax.sound.sampled.DataLine;
-import javax.sound.sampled.LineUnavailableException;
-import javax.sound.sampled.SourceDataLine;
-
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Static access to one default {@link AudioSession}, which plays through the speaker
+ * unless another sink is chosen. Every method here forwards to that session; use
+ * {@link AudioSession} directly to drive several independent streams at once.
+ */
 public final class StdAudio {
 
     /**
@@ -13,54 +17,158 @@ public final class StdAudio {
      */
     public static final int SAMPLE_RATE = 44100;
 
-    private static final int BYTES_PER_SAMPLE = 8;       // 16-bit audio
-    private static final int BITS_PER_SAMPLE = 16;       // 16-bit audio
-    private static final double MAX_16_BIT = 32768;
-    private static final int SAMPLE_BUFFER_SIZE = 4096;
-
-    private static final int MONO = 1;
-    private static final boolean LITTLE_ENDIAN = false;
-    private static final boolean SIGNED = true;
+    private static final AudioSession session = new AudioSession();
 
-    private static SourceDataLine line;   // Sound played.
-    private static byte[] buffer;         // Internal buffer.
-    private static int bufferSize = 0;    // Number of samples currently in internal buffer.
+    private static final long DISK_CACHE_BYTES = 256L << 20;    // Ceiling of "--disk-cache".
 
     private StdAudio() {
     }
 
     // Static initializer.
     static {
-        init();
+        session.metrics().setEnabled(Boolean.getBoolean("stdaudio.metrics"));
     }
 
-    // Opens audio stream.
-    private static void init() {
-        try {
-            // 44,100 Hz, 16-bit audio, mono, signed PCM, little endian.
-            AudioFormat format = new AudioFormat((float) SAMPLE_RATE, BITS_PER_SAMPLE, MONO, SIGNED, LITTLE_ENDIAN);
-            DataLine.Info info = new DataLine.Info(SourceDataLine.class, format);
+    /**
+     * Returns the session every static method forwards to.
+     *
+     * @return the default session.
+     */
+    public static AudioSession session() {
+        return session;
+    }
 
-            line = (SourceDataLine) AudioSystem.getLine(info);
-            line.open(format, SAMPLE_BUFFER_SIZE * BYTES_PER_SAMPLE);
+    /**
+     * Returns the format of the audio standard audio produces:
+     * 44,100 Hz, 16-bit audio, mono, signed PCM, little endian.
+     *
+     * @return the audio format.
+     */
+    public static AudioFormat format() {
+        return session.format();
+    }
 
-            // the internal buffer is a fraction of the actual buffer size, this choice is arbitrary
-            // it gets divided because we can't expect the buffered data to line up exactly with when
-            // the sound card decides to push out its samples.
-            buffer = new byte[SAMPLE_BUFFER_SIZE * BYTES_PER_SAMPLE/3];
-        }
-        catch (LineUnavailableException e) {
-            System.out.println(e.getMessage());
-        }
-        line.start(); // Sound is only generated after this line.
+    /**
+     * Sends everything played from now on to {@code sink} instead of the speaker.
+     * Anything still in the internal buffer goes to the previous sink first.
+     *
+     * @param sink the new destination.
+     */
+    public static void setSink(AudioSink sink) {
+        session.setSink(sink);
+    }
+
+    /**
+     * Starts opening the speaker on a background thread, so it is ready by the time the
+     * first notes are rendered; see {@link AudioSession#openSpeakerAsync}.
+     */
+    public static void openSpeakerAsync() {
+        session.openSpeakerAsync();
+    }
+
+    /**
+     * Moves the blocking writes to the current sink (the speaker unless another sink
+     * was set) onto a dedicated writer thread fed through a ring holding
+     * {@code leadMillis} of audio. See {@link AsyncSink} for the watermarks.
+     *
+     * @param  leadMillis    how far synthesis may run ahead of playback.
+     * @param  lowWatermark  fraction of the ring the writer waits for before (re)starting.
+     * @param  highWatermark fraction of the ring at which synthesis pauses.
+     * @return the asynchronous sink now in use, for watching its fill level and underruns.
+     */
+    public static AsyncSink setAsync(int leadMillis, double lowWatermark, double highWatermark) {
+        return session.setAsync(leadMillis, lowWatermark, highWatermark);
+    }
+
+    /**
+     * Renders chords and scores at {@code rate} and resamples them to
+     * {@link #SAMPLE_RATE}; see {@link AudioSession#setSynthesisRate}.
+     *
+     * @param rate samples per second to synthesize at.
+     * @throws IllegalArgumentException if {@code rate} is not positive.
+     */
+    public static void setSynthesisRate(int rate) {
+        session.setSynthesisRate(rate);
+    }
+
+    /**
+     * Sizes the speaker's buffers to hold an output latency of {@code millis}, adapting
+     * to underruns, instead of using fixed frame counts; see
+     * {@link AudioSession#setTargetLatency}. It takes effect the next time the speaker is
+     * opened.
+     *
+     * @param millis the output latency to aim for, or 0 to go back to fixed buffers.
+     * @throws IllegalArgumentException if {@code millis} is negative.
+     */
+    public static void setTargetLatency(int millis) {
+        session.setTargetLatency(millis);
+    }
+
+    /**
+     * Returns the rate chords and scores are synthesized at.
+     *
+     * @return samples per second.
+     */
+    public static int getSynthesisRate() {
+        return session.getSynthesisRate();
+    }
+
+    /**
+     * Sets the size of the audio line's buffer; it takes effect the next time the
+     * speaker is opened.
+     *
+     * @param frames the line buffer size in frames.
+     * @throws IllegalArgumentException if {@code frames} is not positive.
+     */
+    public static void setLineBufferFrames(int frames) {
+        session.setLineBufferFrames(frames);
+    }
+
+    /**
+     * Sets how much audio goes to the sink in one write.
+     *
+     * @param frames the internal buffer size in frames.
+     * @throws IllegalArgumentException if {@code frames} is not positive.
+     */
+    public static void setWriteBufferFrames(int frames) {
+        session.setWriteBufferFrames(frames);
+    }
+
+    /**
+     * Returns the playback metrics of standard audio. They start disabled unless the
+     * {@code stdaudio.metrics} system property is {@code true}; enable them with
+     * {@link PlaybackMetrics#setEnabled} and publish them with {@link PlaybackMetrics#register}.
+     *
+     * @return the playback metrics.
+     */
+    public static PlaybackMetrics metrics() {
+        return session.metrics();
+    }
+
+    /**
+     * Selects how {@link #multiplePlay} generates its sine waves.
+     *
+     * @param mode the oscillator mode to use.
+     * @throws IllegalArgumentException if {@code mode} is {@code null}.
+     */
+    public static void setOscillatorMode(OscillatorMode mode) {
+        session.setOscillatorMode(mode);
+    }
+
+    /**
+     * Returns the oscillator mode {@link #multiplePlay} currently uses.
+     *
+     * @return the oscillator mode.
+     */
+    public static OscillatorMode getOscillatorMode() {
+        return session.getOscillatorMode();
     }
 
     /**
      * Closes standard audio.
      */
     public static void close() {
-        line.drain();
-        line.stop();
+        session.close();
     }
 
     /**
@@ -71,415 +179,228 @@ public final class StdAudio {
      * @throws IllegalArgumentException if the sample is {@code Double.NaN}.
      */
     public static void play(double sample) {
-        if (Double.isNaN(sample)) throw new IllegalArgumentException("sample is NaN");
-
-        // Clip if outside [-1, +1].
-        if (sample < -1.0) sample = -1.0;
-        if (sample > +1.0) sample = +1.0;
-
-        // Convert to bytes.
-        short s = (short) (MAX_16_BIT * sample);
-        if (sample == 1.0) s = Short.MAX_VALUE;
-        buffer[bufferSize++] = (byte) s;
-        buffer[bufferSize++] = (byte) (s >> 8);
-
-        // Sends to sound card if buffer is full.
-        if (bufferSize >= buffer.length) {
-            line.write(buffer, 0, buffer.length);
-            bufferSize = 0;
-        }
+        session.play(sample);
+    }
+
+    /**
+     * Writes an array of samples (between -1.0 and +1.0) to standard audio.
+     * If a sample is outside the range, it will be clipped.
+     *
+     * @param  samples the samples to play.
+     * @throws IllegalArgumentException if any sample is {@code Double.NaN}.
+     */
+    public static void play(double[] samples) {
+        session.play(samples);
+    }
+
+    /**
+     * Writes {@code len} samples (between -1.0 and +1.0) starting at {@code off} to
+     * standard audio. The block is clipped and converted in one pass straight into the
+     * internal buffer, which goes to the sound card each time it fills.
+     *
+     * @param  samples array holding the samples to play.
+     * @param  off     index of the first sample.
+     * @param  len     number of samples.
+     * @throws IllegalArgumentException if any sample is {@code Double.NaN}; some of the
+     *         samples before it may already have been played.
+     */
+    public static void play(double[] samples, int off, int len) {
+        session.play(samples, off, len);
+    }
+
+    /**
+     * Writes {@code len} samples (between -1.0 and +1.0) starting at {@code off} to
+     * standard audio. If a sample is outside the range, it will be clipped.
+     *
+     * @param  samples array holding the samples to play.
+     * @param  off     index of the first sample.
+     * @param  len     number of samples.
+     * @throws IllegalArgumentException if any sample is {@code Float.NaN}; some of the
+     *         samples before it may already have been played.
+     */
+    public static void play(float[] samples, int off, int len) {
+        session.play(samples, off, len);
+    }
+
+    /**
+     * Writes {@code len} 16-bit PCM samples starting at {@code off} to standard audio
+     * without any conversion.
+     *
+     * @param samples array holding the samples to play.
+     * @param off     index of the first sample.
+     * @param len     number of samples.
+     */
+    public static void play(short[] samples, int off, int len) {
+        session.play(samples, off, len);
     }
 
     // Plays sounds using sine waves of different durations and amplitudes and makes use of
     // a double array instead of just a double to store multiple frequencies (chords).
+    // The chord is rendered a block at a time by the selected oscillator.
     public static void multiplePlay(double[] hzs, double duration, double amplitude) {
-        amplitude = amplitude / hzs.length;
-        int N = (int) (SAMPLE_RATE * duration);
-        double sum;
-        for (int i = 0; i <= N; i++) {
-            sum = 0;
-            for (double hz : hzs)
-                sum += amplitude * Math.sin(2 * Math.PI * i * hz / SAMPLE_RATE);
-            play(sum);
-        }
+        session.multiplePlay(hzs, duration, amplitude);
+    }
+
+    /**
+     * Replays repeated chords from {@code cache} instead of synthesizing them again.
+     * See {@link ChordCache} for how this can change the output.
+     *
+     * @param cache the chord cache, or {@code null} to synthesize every chord.
+     */
+    public static void setCache(ChordCache cache) {
+        session.setCache(cache);
     }
 
-    // Programmed sine waves to play.
+    /**
+     * Returns the chord cache in use.
+     *
+     * @return the chord cache, or {@code null} if there is none.
+     */
+    public static ChordCache getCache() {
+        return session.getCache();
+    }
+
+    /**
+     * Keeps rendered chords and scores in {@code cache} across runs, so a score played
+     * before starts straight from disk; see {@link AudioSession#setDiskCache}.
+     *
+     * @param cache the disk cache, or {@code null} to keep nothing on disk.
+     */
+    public static void setDiskCache(RenderCache cache) {
+        session.setDiskCache(cache);
+    }
+
+    /**
+     * Returns the disk cache in use.
+     *
+     * @return the disk cache, or {@code null} if there is none.
+     */
+    public static RenderCache getDiskCache() {
+        return session.getDiskCache();
+    }
+
+    /**
+     * Plays a compiled score from start to finish, rendering each event a block at a
+     * time into the reusable block buffer, or replaying it from the chord cache.
+     *
+     * @param score the score; if it was compiled for another rate than the synthesis
+     *              rate, it is compiled again for the synthesis rate.
+     */
+    public static void play(CompiledScore score) {
+        session.play(score);
+    }
+
+    /**
+     * Performs a compiled score on a {@link VoicePool}, with overlapping, enveloped notes
+     * instead of block chords; see {@link AudioSession#play(CompiledScore, VoicePool)}.
+     *
+     * @param score the score.
+     * @param pool  the voices to play it on, rendering at {@link #SAMPLE_RATE} unless
+     *              another synthesis rate was set.
+     */
+    public static void play(CompiledScore score, VoicePool pool) {
+        session.play(score, pool);
+    }
+
+    /**
+     * Renders a compiled score on {@code pool}, splitting it along event boundaries, and
+     * then plays the finished audio. The output is identical to {@link #play(CompiledScore)};
+     * this is meant for offline rendering, where the sink does not pace the renderer.
+     * With low-rate synthesis the score is played sequentially instead.
+     *
+     * @param score the score; if it was compiled for another rate than the synthesis
+     *              rate, it is compiled again for the synthesis rate.
+     * @param pool  the pool to render on.
+     */
+    public static void playParallel(CompiledScore score, ForkJoinPool pool) {
+        session.playParallel(score, pool);
+    }
+
+    // Plays a score: the anthem bundled as anthem.score unless a score file is given.
+    // With "--render out.wav" the song is written to a WAV file as fast as it can be
+    // synthesized instead of being played through the speaker; adding "--incremental" only
+    // re-renders the bars that changed since the last render. With "--async ms" a writer
+    // thread feeds the output from a ring holding that much audio. With "--parallel" the
+    // whole score is rendered on every core first. With "--cache mb" repeated chords are
+    // replayed from a cache of that many megabytes, and its counters are printed at the end.
+    // With "--disk-cache dir" rendered chords and scores are kept in that directory, up to
+    // 256 MB, so a second run plays straight from disk.
+    // With "--voices n" the score is performed on a pool of n enveloped voices that
+    // overlap from one event to the next.
+    // With "--metrics" playback is measured, published over JMX and summarized at the end.
+    // With "--synthesis-rate hz" chords are synthesized at that rate and resampled.
+    // With "--latency ms" the speaker holds about that much audio, more if it underruns.
+    // With "--fast-start" the speaker is opened in the background while the score loads,
+    // and starts once its buffer is full of the opening bars. Running the jar with
+    // -XX:SharedArchiveFile=player/target/player.jsa, built by "mvn -B package -Pcds",
+    // also skips most class loading.
     public static void main(String[] args) {
+        int asyncMillis = 0;
+        boolean parallel = false;
+        Path render = null;
+        boolean incremental = false;
+        int voices = 0;
+        boolean fastStart = false;
+        String scoreFile = null;
+        PlaybackMetrics metrics = metrics();
+        for (int a = 0; a < args.length; a++) {
+            if (args[a].equals("--render") && a + 1 < args.length)
+                render = Paths.get(args[++a]);
+            else if (args[a].equals("--incremental"))
+                incremental = true;
+            else if (args[a].equals("--async") && a + 1 < args.length)
+                asyncMillis = Integer.parseInt(args[++a]);
+            else if (args[a].equals("--cache") && a + 1 < args.length)
+                setCache(new ChordCache(Long.parseLong(args[++a]) << 20));
+            else if (args[a].equals("--disk-cache") && a + 1 < args.length)
+                setDiskCache(new RenderCache(Paths.get(args[++a]), DISK_CACHE_BYTES));
+            else if (args[a].equals("--metrics")) {
+                metrics.setEnabled(true);
+                metrics.register("default");
+            }
+            else if (args[a].equals("--synthesis-rate") && a + 1 < args.length)
+                setSynthesisRate(Integer.parseInt(args[++a]));
+            else if (args[a].equals("--latency") && a + 1 < args.length)
+                setTargetLatency(Integer.parseInt(args[++a]));
+            else if (args[a].equals("--voices") && a + 1 < args.length)
+                voices = Integer.parseInt(args[++a]);
+            else if (args[a].equals("--parallel"))
+                parallel = true;
+            else if (args[a].equals("--fast-start"))
+                fastStart = true;
+            else if (!args[a].startsWith("--") && scoreFile == null)
+                scoreFile = args[a];
+            else
+                throw new IllegalArgumentException("usage: StdAudio [--render out.wav [--incremental]] [--async ms] [--parallel] [--cache mb] [--disk-cache dir] [--metrics] [--synthesis-rate hz] [--latency ms] [--voices n] [--fast-start] [score]");
+        }
+        if (incremental && render == null) throw new IllegalArgumentException("--incremental needs --render");
+        if (fastStart && render == null) openSpeakerAsync();
+        Score score = scoreFile == null ? Score.loadResource("anthem.score") : Score.load(Paths.get(scoreFile));
+        if (incremental) {
+            System.out.println(IncrementalRenderer.render(score, render, getOscillatorMode(), SAMPLE_RATE));
+            return;
+        }
+        if (render != null) {
+            IncrementalRenderer.forget(render);    // Its bars would no longer describe the file.
+            setSink(new WavFileSink(render, format()));
+        }
+        if (asyncMillis > 0) setAsync(asyncMillis, 0.5, 0.9);
 
-        // Assigning certain frequencies (hz) their respective note names.
-        double rest = 0;
-
-        double C3 = 130.81;
-        double D3 = 146.83;
-        double Eb3 = 155.56;
-        double F3 = 174.61;
-        double G3 = 196.00;
-        double Ab3 = 207.65;
-        double A3 = 220.00;
-        double Bb3 = 233.08;
-        double C4 = 261.63;
-        double D4 = 293.66;
-        double Eb4 = 311.13;
-        double F4 = 349.23;
-        double G4 = 392.00;
-        double A4 = 440.00;
-        double Ab4 = 415.30;
-        double Bb4 = 466.16;
-        double B4 = 493.88;
-        double C5 = 523.25;
-        double D5 = 587.33;
-        double Eb5 = 622.25;
-        double F5 = 698.46;
-        double G5 = 783.99;
-        double Ab5 = 830.61;
-        double Bb5 = 932.33;
-
-        // Changing duration values to notes.
-        double sixteenth = 0.208333;
-        double eighth = 0.416667;
-        double sixteenthTriplet = 0.138888;
-        double dottedEighth = 0.625;
-        double quarter = 0.833333;
-        double dottedQuarter = 1.25;
-        double dottedHalf = 2.5;
-
-        // Changing amplitude values to dynamics.
-        double mf = 0.5;
-        double f = 0.75;
-        double ff = 1;
-
-        // Programming the song, line breaks indicate a new bar.
-        multiplePlay(new double[]{Eb3, Eb4, G4, Bb4, Eb5}, dottedHalf, ff);
-        multiplePlay(new double[]{rest}, eighth, mf);
-        multiplePlay(new double[]{Bb4}, eighth, mf);
-
-        multiplePlay(new double[]{Eb3, Eb4, G4, Bb4, Eb5}, quarter, mf);
-        multiplePlay(new double[]{Eb3, Eb4, G4, Bb4}, dottedEighth, mf);
-        multiplePlay(new double[]{C5}, sixteenth, mf);
-        multiplePlay(new double[]{G3, D4, G4, Bb4, D5}, quarter, mf);
-        multiplePlay(new double[]{G3, Bb3, D4, G4}, eighth, mf);
-        multiplePlay(new double[]{G3, G4}, eighth, mf);
-
-        multiplePlay(new double[]{Ab3, C4, Eb4, C5}, quarter, mf);
-        multiplePlay(new double[]{Ab3, C4, Eb4, Bb4}, dottedEighth, mf);
-        multiplePlay(new double[]{Ab4}, sixteenth, mf);
-        multiplePlay(new double[]{G3, Bb3, Eb4, Bb4}, quarter, mf);
-        multiplePlay(new double[]{G3, Bb3, Eb4}, eighth, mf);
-        multiplePlay(new double[]{G3, Eb4}, eighth, mf);
-
-        multiplePlay(new double[]{F3, Ab3, C4, F4}, quarter, mf);
-        multiplePlay(new double[]{F3, Ab3, C4, F4}, dottedEighth, mf);
-        multiplePlay(new double[]{F3, G4}, sixteenth, mf);
-        multiplePlay(new double[]{Eb3, C4, Ab4}, quarter, mf);
-        multiplePlay(new double[]{Eb3, C4, Ab4}, dottedEighth, mf);
-        multiplePlay(new double[]{Eb3, C4, Bb4}, sixteenth, mf);
-
-        multiplePlay(new double[]{Eb3, C4, C5}, quarter, mf);
-        multiplePlay(new double[]{D3, D4, D5}, eighth, mf);
-        multiplePlay(new double[]{C3, Eb4, Eb5}, eighth, mf);
-        multiplePlay(new double[]{Bb3, F4, Bb4, D5, F5}, eighth, mf);
-        multiplePlay(new double[]{Ab3, F4, Bb4, D5, F5}, eighth, mf);
-        multiplePlay(new double[]{G3, F4, Bb4, D5, F5}, eighth, mf);
-        multiplePlay(new double[]{F3, Bb4}, eighth, mf);
-
-        // 6
-        multiplePlay(new double[]{Eb3, G4, Bb4, Eb5, G5}, quarter, f);
-        multiplePlay(new double[]{G3, F4, Bb4, F5}, dottedEighth, f);
-        multiplePlay(new double[]{G3, Eb4, Bb4, Eb5}, sixteenth, f);
-        multiplePlay(new double[]{Bb3, F4, Bb4, D5, F5}, eighth, f);
-        multiplePlay(new double[]{F3, F4, Bb4, D5, F5}, eighth, f);
-        multiplePlay(new double[]{D3, F4, D5}, eighth, f);
-        multiplePlay(new double[]{Bb3, D4, Bb4}, eighth, f);
-
-        multiplePlay(new double[]{C3, Eb4, G4, C5, Eb5}, quarter, f);
-        multiplePlay(new double[]{Eb3, D4, G4, D5}, dottedEighth, f);
-        multiplePlay(new double[]{Eb3, C4, C5}, sixteenth, f);
-        multiplePlay(new double[]{G3, D4, G4, D5}, eighth, f);
-        multiplePlay(new double[]{D3, D4, G4, D5}, eighth, f);
-        multiplePlay(new double[]{Bb3, D4, G4}, eighth, f);
-        multiplePlay(new double[]{G3, Bb3, G4}, eighth, f);
-
-        multiplePlay(new double[]{Ab3, C4, Eb4, C5}, quarter, mf);
-        multiplePlay(new double[]{F3, C4, Eb4, Bb4}, dottedEighth, mf);
-        multiplePlay(new double[]{F3, Ab3, C4, Eb4, Ab4}, sixteenth, mf);
-        multiplePlay(new double[]{G3, Bb3, Eb4, Bb4}, quarter, mf);
-        multiplePlay(new double[]{G3, Bb3, Eb4}, dottedEighth, mf);
-        multiplePlay(new double[]{G3, Bb3, Eb4}, sixteenth, mf);
-
-        multiplePlay(new double[]{F3, Eb4, A4, Eb5}, quarter, mf);
-        multiplePlay(new double[]{F3, Eb4, G4, D5}, dottedEighth, mf);
-        multiplePlay(new double[]{F3, A4, C4}, sixteenth, mf);
-        multiplePlay(new double[]{Bb3, D4, Bb4}, eighth, mf);
-        multiplePlay(new double[]{Ab3, D4, Bb4}, eighth, mf);
-        multiplePlay(new double[]{G3, D4, Bb4}, eighth, mf);
-        multiplePlay(new double[]{F3}, eighth, mf);
-
-        // 10
-        multiplePlay(new double[]{Eb3, G4, Bb4, Eb5, G5}, eighth, f);
-        multiplePlay(new double[]{D3, G4, Bb4, Eb5, G5}, eighth, f);
-        multiplePlay(new double[]{Eb3, G4, Bb4, Eb5, G5}, eighth, f);
-        multiplePlay(new double[]{F3, G4, Bb4, Eb5, G5}, eighth, f);
-        multiplePlay(new double[]{G3, D5, F5}, eighth, f);
-        multiplePlay(new double[]{G3, C5, Eb5}, eighth, f);
-        multiplePlay(new double[]{G3, Bb4, D5}, eighth, f);
-        multiplePlay(new double[]{G3, C5, Eb5}, eighth, f);
-
-        multiplePlay(new double[]{Bb3, D5, F5}, dottedQuarter, f);
-        multiplePlay(new double[]{Bb3, D4, F4, Bb4}, eighth, f);
-        multiplePlay(new double[]{Bb3, D4, F4, Bb4}, quarter, f);
-        multiplePlay(new double[]{Ab3, D4, F4, Bb4}, eighth, f);
-        multiplePlay(new double[]{G3}, eighth, f);
-
-        multiplePlay(new double[]{C4, Eb4, G4, C5, Eb5}, eighth, f);
-        multiplePlay(new double[]{G3, Eb4, G4, C5, Eb5}, eighth, f);
-        multiplePlay(new double[]{C4, Eb4, G4, C5, Eb5}, eighth, f);
-        multiplePlay(new double[]{D3, Eb4, G4, C5, Eb5}, eighth, f);
-        multiplePlay(new double[]{Eb3, Bb4, D5}, eighth, f);
-        multiplePlay(new double[]{Eb3, A4, C5}, eighth, f);
-        multiplePlay(new double[]{Eb3, G4, Bb4}, eighth, f);
-        multiplePlay(new double[]{Eb3, A4, C5}, eighth, f);
-
-        multiplePlay(new double[]{G3, Bb4, D5}, dottedQuarter, f);
-        multiplePlay(new double[]{G3, Bb3, D4, G4}, eighth, f);
-        multiplePlay(new double[]{G3, Bb3, D4, G4}, eighth, f);
-        multiplePlay(new double[]{G3, G4, Bb4}, eighth, f);
-        multiplePlay(new double[]{F3, Ab4, C5}, eighth, f);
-        multiplePlay(new double[]{Bb3, Bb4, D5}, eighth, f);
-
-        // 14
-        multiplePlay(new double[]{Ab3, Eb4, C5, Eb5}, quarter, mf);
-        multiplePlay(new double[]{Ab3, Eb4, Ab4, C5}, dottedEighth, mf);
-        multiplePlay(new double[]{Eb3, Eb4, Bb4, D5}, sixteenth, mf);
-        multiplePlay(new double[]{C3, C4, Eb4, C5, Eb5}, quarter, mf);
-        multiplePlay(new double[]{C4, Eb4, Ab4, C5}, dottedEighth, mf);
-        multiplePlay(new double[]{Bb3, Eb4, Bb4, D5}, sixteenth, mf);
-
-        multiplePlay(new double[]{Ab3, Eb4, C5, Eb5}, quarter, mf);
-        multiplePlay(new double[]{Ab3, Eb4, Ab4, C5}, eighth, mf);
-        multiplePlay(new double[]{Eb3, Ab4, C5, Eb5}, eighth, mf);
-        multiplePlay(new double[]{C3, C4, Ab4, C5, Eb5, Ab5}, eighth, mf);
-        multiplePlay(new double[]{Bb3, Ab4, Ab5}, sixteenthTriplet, mf);
-        multiplePlay(new double[]{Ab4, Ab5}, sixteenthTriplet, mf);
-        multiplePlay(new double[]{Ab4, Ab5}, sixteenthTriplet, mf);
-        multiplePlay(new double[]{Ab3, Ab4, Ab5}, eighth, mf);
-        multiplePlay(new double[]{G3, Ab4, Ab5}, eighth, mf);
-
-        multiplePlay(new double[]{F3, Ab4, C5, F5, Ab5}, dottedQuarter, f);
-        multiplePlay(new double[]{G3, Ab4, C5, F5, Ab5}, sixteenth, f);
-        multiplePlay(new double[]{Ab3, Ab4, C5, F5, Ab5}, sixteenth, f);
-        multiplePlay(new double[]{Bb3, Bb4, D5, G5}, eighth, f);
-        multiplePlay(new double[]{Bb3, Bb4, D5, F5}, eighth, f);
-        multiplePlay(new double[]{Bb3, Ab4, C5, Eb5}, eighth, f);
-        multiplePlay(new double[]{Bb3, Bb4, D5, F5}, eighth, f);
-
-        multiplePlay(new double[]{Eb3, G4, Bb4, Eb4, G5}, eighth, f);
-        multiplePlay(new double[]{D3, G4, Bb4, Eb4, G5}, eighth, f);
-        multiplePlay(new double[]{Eb3, G4, Bb4, Eb4, G5}, eighth, f);
-        multiplePlay(new double[]{G3, G4, Bb4, Eb5}, eighth, f);
-        multiplePlay(new double[]{F3, G4, Bb4, Eb5}, eighth, f);
-        multiplePlay(new double[]{Eb3, G4, Bb4, Eb5}, eighth, f);
-        multiplePlay(new double[]{D3, G4, Bb4, Eb5}, eighth, f);
-        multiplePlay(new double[]{C3, G4, Bb4, Eb5}, eighth, f);
-
-        // 18
-        multiplePlay(new double[]{D3, F4, A4, C5, F5}, dottedQuarter, f);
-        multiplePlay(new double[]{Eb3, F4, A4, C5, F5}, sixteenth, f);
-        multiplePlay(new double[]{F3, F4, A4, C5, F5}, sixteenth, f);
-        multiplePlay(new double[]{G3, G4, B4, Eb5}, eighth, f);
-        multiplePlay(new double[]{G3, G4, B4, D5}, eighth, f);
-        multiplePlay(new double[]{G3, F4, A4, C5}, eighth, f);
-        multiplePlay(new double[]{G3, G4, Bb4, D5}, eighth, f);
-
-        multiplePlay(new double[]{C4, Eb4, G4, C5, Eb5}, eighth, f);
-        multiplePlay(new double[]{D3, Eb4, G4, C5, Eb5}, eighth, f);
-        multiplePlay(new double[]{Eb3, Eb4, G4, C5, Eb5}, eighth, f);
-        multiplePlay(new double[]{F3, Eb4, G4, C5}, eighth, f);
-        multiplePlay(new double[]{C3, C4, Eb4, G4, C5}, quarter, f);
-        multiplePlay(new double[]{Bb3, Eb4, G4, C5}, quarter, f);
-
-        multiplePlay(new double[]{Ab3, Eb4, C5, Eb5}, quarter, f);
-        multiplePlay(new double[]{F3, Eb4, Bb4, D5}, dottedEighth, f);
-        multiplePlay(new double[]{F3, Eb4, Ab4, C5}, sixteenth, f);
-        multiplePlay(new double[]{G3, Eb4, Bb4}, quarter, f);
-        multiplePlay(new double[]{G3, Bb3, Eb4}, eighth, mf);
-        multiplePlay(new double[]{G3, Bb3, Eb4}, eighth, mf);
-
-        multiplePlay(new double[]{F3, Eb4, A4, Eb5}, quarter, mf);
-        multiplePlay(new double[]{F3, Eb4, G4, D5}, dottedEighth, mf);
-        multiplePlay(new double[]{F3, Eb4, A4, C5}, sixteenth, mf);
-        multiplePlay(new double[]{Bb3, D4, Bb4}, quarter, mf);
-        multiplePlay(new double[]{Bb3, D4, Ab4, Bb4}, eighth, mf);
-        multiplePlay(new double[]{Bb3, D4, Ab4, Bb4}, eighth, mf);
-
-        // 22
-        multiplePlay(new double[]{Eb3, Eb4, G4, Bb4, Eb5}, quarter, f);
-        multiplePlay(new double[]{Eb3, Eb4, G4, Bb4}, dottedEighth, f);
-        multiplePlay(new double[]{Eb3, Eb4, G4, C5}, sixteenth, f);
-        multiplePlay(new double[]{G3, D4, G4, Bb4, D5}, quarter, f);
-        multiplePlay(new double[]{G3, Bb3, D4, G4}, eighth, f);
-        multiplePlay(new double[]{G3, Bb3, D4, G4}, eighth, f);
-
-        multiplePlay(new double[]{Ab3, C4, Eb4, C5}, quarter, f);
-        multiplePlay(new double[]{Ab3, C4, Eb4, Bb4}, dottedEighth, f);
-        multiplePlay(new double[]{Ab3, C4, Eb4, Ab4}, sixteenth, f);
-        multiplePlay(new double[]{G3, Bb3, Eb4, Bb4}, quarter, f);
-        multiplePlay(new double[]{Eb3, Bb3, Eb4}, eighth, f);
-        multiplePlay(new double[]{Eb3, Bb3, Eb4}, eighth, f);
-
-        multiplePlay(new double[]{F3, Ab3, C4, F4}, quarter, f);
-        multiplePlay(new double[]{F3, Ab3, C4, F4}, dottedEighth, f);
-        multiplePlay(new double[]{F3, Ab3, C4, G4}, sixteenth, f);
-        multiplePlay(new double[]{Eb3, C4, Ab4}, quarter, f);
-        multiplePlay(new double[]{Eb3, C4, Ab4}, dottedEighth, f);
-        multiplePlay(new double[]{Eb3, C4, Bb4}, sixteenth, f);
-
-        multiplePlay(new double[]{Eb3, C4, C5}, quarter, f);
-        multiplePlay(new double[]{D3, D4, D5}, eighth, f);
-        multiplePlay(new double[]{C3, Eb4, Eb5}, eighth, f);
-        multiplePlay(new double[]{Bb3, F4, Bb4, D5, F5}, eighth, f);
-        multiplePlay(new double[]{Ab3, F4, Bb4, D5, F5}, eighth, f);
-        multiplePlay(new double[]{G3, F4, Bb4, D5, F5}, eighth, f);
-        multiplePlay(new double[]{F3, F4, Bb4, D5}, eighth, f);
-
-        //26
-        multiplePlay(new double[]{Eb3, G4, Bb4, Eb5, G5}, quarter, f);
-        multiplePlay(new double[]{G3, F4, Bb4, F5}, dottedEighth, f);
-        multiplePlay(new double[]{G3, Eb4, Bb4, Eb5}, sixteenth, f);
-        multiplePlay(new double[]{Bb3,F4, Bb4, D5, F5}, eighth, f);
-        multiplePlay(new double[]{F3, F4, Bb4, D5, F5}, eighth, f);
-        multiplePlay(new double[]{D3, F4, D5}, eighth, f);
-        multiplePlay(new double[]{Bb3, D4, Bb4 }, eighth, f);
-
-        multiplePlay(new double[]{C3, Eb4, G4, C5, Eb5}, quarter, f);
-        multiplePlay(new double[]{Eb3, D4, G4, D5}, dottedEighth, f);
-        multiplePlay(new double[]{Eb3, C4, G4, C5}, sixteenth, f);
-        multiplePlay(new double[]{D4, G4, D5}, quarter, f);
-        multiplePlay(new double[]{Bb3, D4, G4}, eighth, mf);
-        multiplePlay(new double[]{G3, Bb3, G4}, eighth, mf);
-
-        multiplePlay(new double[]{Ab3, C4, Eb4, C5}, quarter, mf);
-        multiplePlay(new double[]{F3, C4, Eb4, Bb4}, dottedEighth, mf);
-        multiplePlay(new double[]{F3, Ab3, C4, Eb4, Ab4}, sixteenth, mf);
-        multiplePlay(new double[]{G3, Bb3, Eb4, Bb4}, quarter, mf);
-        multiplePlay(new double[]{G3, Bb3, Eb4}, dottedEighth, mf);
-        multiplePlay(new double[]{G3, Bb3, Eb4}, sixteenth, mf);
-
-        multiplePlay(new double[]{F3, Eb4, A4, Eb5}, quarter, mf);
-        multiplePlay(new double[]{F3, Eb4, G4, D5}, dottedEighth, mf);
-        multiplePlay(new double[]{F3, A4, C5}, sixteenth, mf);
-        multiplePlay(new double[]{Bb3, D4, Bb4}, eighth, mf);
-        multiplePlay(new double[]{A3, Bb4, D5}, eighth, mf);
-        multiplePlay(new double[]{G3, C5, Eb5}, eighth, mf);
-        multiplePlay(new double[]{F3, D5, F5}, eighth, mf);
-
-        // 30
-        multiplePlay(new double[]{Eb3, G4, Bb4, Eb5, G5}, eighth, f);
-        multiplePlay(new double[]{D3, G4, Bb4, Eb5, G5}, eighth, f);
-        multiplePlay(new double[]{Eb3, G4, Bb4, Eb5, G5}, eighth, f);
-        multiplePlay(new double[]{F3, G4, Bb4, Eb5, G5}, eighth, f);
-        multiplePlay(new double[]{G3, Bb4, D5, F5, Bb5}, eighth, f);
-        multiplePlay(new double[]{G3, Bb4, C5, Eb5, Bb5}, eighth, f);
-        multiplePlay(new double[]{G3, Bb4, D5, Bb5}, eighth, f);
-        multiplePlay(new double[]{G3, Bb4, C5, Eb5, Bb5}, eighth, f);
-
-        multiplePlay(new double[]{Bb3, Bb4, D5, F5, Bb5}, eighth, f);
-        multiplePlay(new double[]{Bb3, Bb4, D5, F5, Bb5}, sixteenthTriplet, f);
-        multiplePlay(new double[]{Bb3, Bb4, D5, F5, Bb5}, sixteenthTriplet, f);
-        multiplePlay(new double[]{Bb3, Bb4, D5, F5, Bb5}, sixteenthTriplet, f);
-        multiplePlay(new double[]{Bb3, Bb4, Bb5}, eighth, f);
-        multiplePlay(new double[]{F3, Bb3, D4, F4, Bb4}, eighth, f);
-        multiplePlay(new double[]{Bb3, D4, F4, Bb4}, eighth, f);
-        multiplePlay(new double[]{Bb3, Bb4, D5}, eighth, f);
-        multiplePlay(new double[]{Ab3, C5, Eb5}, eighth, f);
-        multiplePlay(new double[]{G3, D5, F5}, eighth, f);
-
-        multiplePlay(new double[]{C4, Eb4, G4, C5, Eb5}, eighth, f);
-        multiplePlay(new double[]{C3, Eb4, G4, C5, Eb5}, eighth, f);
-        multiplePlay(new double[]{C4, Eb4, G4, C5, Eb5}, eighth, f);
-        multiplePlay(new double[]{D4, Eb4, G4, C5, Eb5}, eighth, f);
-        multiplePlay(new double[]{Eb3, G4, Bb4, D5, G5}, eighth, f);
-        multiplePlay(new double[]{Eb3, G4, A4, C5, G5}, eighth, f);
-        multiplePlay(new double[]{Eb3, G4, Bb4, G5}, eighth, f);
-        multiplePlay(new double[]{Eb3, G4, A4, C5, G5}, eighth, f);
-
-        // 33
-        multiplePlay(new double[]{G3, G4, Bb4, D5, G5}, eighth, f);
-        multiplePlay(new double[]{G3, G4, Bb4, D5, G5}, sixteenthTriplet, f);
-        multiplePlay(new double[]{G3, G4, Bb4, D5, G5}, sixteenthTriplet, f);
-        multiplePlay(new double[]{G3, G4, Bb4, D5, G5}, sixteenthTriplet, f);
-        multiplePlay(new double[]{G3, G4, G5}, eighth, f);
-        multiplePlay(new double[]{D3, G3, Bb3, D4, G4}, eighth, f);
-        multiplePlay(new double[]{G3, Bb3, D4, G4}, eighth, f);
-        multiplePlay(new double[]{G3, G4, Bb4}, eighth, f);
-        multiplePlay(new double[]{F4, Ab4, C5}, eighth, f);
-        multiplePlay(new double[]{Bb3, Bb4, D5}, eighth, f);
-
-        multiplePlay(new double[]{Ab3, Eb4, C5, Eb5}, quarter, mf);
-        multiplePlay(new double[]{Ab3, Eb4, Ab4, C5}, dottedEighth, mf);
-        multiplePlay(new double[]{Eb3, Eb4, Bb4, D5}, sixteenth, mf);
-        multiplePlay(new double[]{C3, C4, Eb4, C5, Eb5}, quarter, mf);
-        multiplePlay(new double[]{C3, Eb4, Ab4, C5}, dottedEighth, mf);
-        multiplePlay(new double[]{Bb3, Eb4, Bb4, D5}, sixteenth, mf);
-
-        multiplePlay(new double[]{Ab3, Eb4, C5, Eb5}, quarter, mf);
-        multiplePlay(new double[]{Ab3, Eb4, Ab4, C5}, eighth, mf);
-        multiplePlay(new double[]{Eb3, Ab4, C5, Eb5}, eighth, mf);
-        multiplePlay(new double[]{C3, C4, Ab4, C5, Eb5, Ab5}, eighth, mf);
-        multiplePlay(new double[]{Bb3, Ab4, Ab5}, sixteenthTriplet, f);
-        multiplePlay(new double[]{Bb3, Ab4, Ab5}, sixteenthTriplet, f);
-        multiplePlay(new double[]{Bb3, Ab4, Ab5}, sixteenthTriplet, f);
-        multiplePlay(new double[]{Ab3, Ab4, Ab5}, eighth, f);
-        multiplePlay(new double[]{G3, Ab4, Ab5}, eighth, f);
-
-        // 36
-        multiplePlay(new double[]{F3, Ab3, C5, F5, Ab5}, dottedQuarter, ff);
-        multiplePlay(new double[]{G3, Ab3, C5, F5, Ab5}, sixteenth, ff);
-        multiplePlay(new double[]{Ab3, C5, F5, Ab5}, sixteenth, ff);
-        multiplePlay(new double[]{Bb3, Bb4, D5, G5}, eighth, ff);
-        multiplePlay(new double[]{Bb3, Bb4, D5, F5}, eighth, ff);
-        multiplePlay(new double[]{Bb3, Ab4, C5, Eb5}, eighth, ff);
-        multiplePlay(new double[]{Bb3, Bb4, D5, F5}, eighth, ff);
-
-        multiplePlay(new double[]{Eb3, G4, Bb4, Eb5, G5}, eighth, ff);
-        multiplePlay(new double[]{D3, G4, Bb4, Eb5, G5}, eighth, ff);
-        multiplePlay(new double[]{Eb3, G4, Bb4, Eb5, G5}, eighth, ff);
-        multiplePlay(new double[]{G3, G4, Bb4, Eb5}, eighth, ff);
-        multiplePlay(new double[]{F3, G4, Bb4, Eb5}, eighth, ff);
-        multiplePlay(new double[]{Eb3, Eb4, G4, Bb4, Eb5}, sixteenth, ff);
-        multiplePlay(new double[]{Eb3, Eb4, G4, Bb4, Eb5}, sixteenth, ff);
-        multiplePlay(new double[]{D3, Eb4, G4, Bb4, Eb5}, eighth, ff);
-        multiplePlay(new double[]{C3, Eb4, G4, Bb4, Eb5}, eighth, ff);
-
-        multiplePlay(new double[]{D3, F4, A4, C5, F5}, dottedQuarter, ff);
-        multiplePlay(new double[]{Eb3, F4, A4, C5, F5}, sixteenth, ff);
-        multiplePlay(new double[]{F3, F4, A4, C5, F5}, sixteenth, ff);
-        multiplePlay(new double[]{G3, G4, B4, Eb5}, eighth, ff);
-        multiplePlay(new double[]{G3, G4, B4, D5}, eighth, ff);
-        multiplePlay(new double[]{G3, F4, A4, C5}, eighth, ff);
-        multiplePlay(new double[]{G3, G3, B4, D5}, eighth, ff);
-
-        // 39
-        multiplePlay(new double[]{C4, Eb4, G4, C5, Eb5}, eighth, ff);
-        multiplePlay(new double[]{D3, Eb4, G4, C5, Eb5}, eighth, ff);
-        multiplePlay(new double[]{Eb3, Eb4, G4, C5, Eb5}, eighth, ff);
-        multiplePlay(new double[]{F3, Eb4, G4, C5}, eighth, ff);
-        multiplePlay(new double[]{C3, C4, Eb4, G4, C5}, quarter, ff);
-        multiplePlay(new double[]{Bb3, Eb4, G4, C5}, quarter, ff);
-
-        multiplePlay(new double[]{Ab3, Eb4, C5, Eb5}, quarter, f);
-        multiplePlay(new double[]{F3, Eb4, Bb4, D5}, eighth, f);
-        multiplePlay(new double[]{F3, Eb4, Ab4, C5}, eighth, f);
-        multiplePlay(new double[]{G3, Bb3, Eb4, Bb4}, quarter, f);
-        multiplePlay(new double[]{G3, Bb3, Eb4}, dottedEighth, f);
-        multiplePlay(new double[]{G3, Bb3, Eb4}, sixteenth, f);
-
-        multiplePlay(new double[]{Bb3, D4, Ab4, Bb4}, 2.2, f);
-        multiplePlay(new double[]{Ab3, C4, Ab4, Bb4, C5}, 1.1, f);
-        multiplePlay(new double[]{Bb3, D4, F4, Ab4, D5}, 1.1, f);
-
-        multiplePlay(new double[]{Eb3, Eb4, G4, Bb4, Eb5}, 4, 1.2);
-
-        StdAudio.close(); //Closes input to the speaker.
+        if (voices > 0) {
+            CompiledScore compiled = score.compile(getSynthesisRate());
+            play(compiled, new VoicePool(voices, AudioSession.voicePoolEvents(compiled), getSynthesisRate()));
+        }
+        else if (parallel) playParallel(score.compile(SAMPLE_RATE), ForkJoinPool.commonPool());
+        else play(score.compile(SAMPLE_RATE));
+
+        StdAudio.close(); //Closes input to the speaker (or finishes the file).
+        ChordCache cache = getCache();
+        if (cache != null) System.out.println(cache);
+        RenderCache diskCache = getDiskCache();
+        if (diskCache != null) {
+            diskCache.flush();    // Its writer is a daemon thread.
+            System.out.println(diskCache);
+        }
+        if (metrics.isEnabled()) System.out.println(metrics);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,82 @@
+package com.company;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Writes audio to an {@link OutputStream}, such as a socket or an HTTP response body.
+ * Writes block whenever the stream does, so a slow reader slows the synthesis feeding
+ * it instead of letting audio pile up in memory.
+ */
+public final class StreamSink implements AudioSink {
+
+    private final OutputStream out;
+    private long bytes;
+
+    /**
+     * Creates a sink that writes to {@code out}.
+     *
+     * @param out the stream to write to; closing the sink closes it.
+     */
+    public StreamSink(OutputStream out) {
+        if (out == null) throw new IllegalArgumentException("stream is null");
+        this.out = out;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws UncheckedIOException if the stream fails, for example because the reader
+     *         went away.
+     */
+    @Override
+    public void write(byte[] bytes, int off, int len) {
+        try {
+            out.write(bytes, off, len);
+            this.bytes += len;
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Flushes the stream.
+     *
+     * @throws UncheckedIOException if the stream fails.
+     */
+    @Override
+    public void drain() {
+        try {
+            out.flush();
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Flushes and closes the stream.
+     *
+     * @throws UncheckedIOException if the stream fails.
+     */
+    @Override
+    public void close() {
+        try {
+            out.close();
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns how many bytes have been written.
+     *
+     * @return the byte count.
+     */
+    public long bytes() {
+        return bytes;
+    }
+}
@@ -0,0 +1,100 @@
+package com.company;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vectorized versions of the scalar sample loops, written with {@code jdk.incubator.vector}.
+ * Each kernel performs the same arithmetic in the same order as its scalar counterpart, so
+ * switching between them never changes the output. Only reached through
+ * {@link VectorSupport#ENABLED}.
+ */
+final class VectorKernels {
+
+    private static final VectorSpecies<Double> D = DoubleVector.SPECIES_PREFERRED;
+
+    // Ints and shorts with as many lanes as D, for packing PCM.
+    private static final VectorSpecies<Integer> I = D.length() >= 4
+            ? VectorSpecies.of(int.class, VectorShape.forBitSize(D.vectorBitSize() / 2))
+            : null;
+    private static final VectorSpecies<Short> S = D.length() >= 4
+            ? VectorSpecies.of(short.class, VectorShape.forBitSize(D.vectorBitSize() / 4))
+            : null;
+
+    private static final double[] IOTA = new double[D.length()];
+
+    static {
+        for (int i = 0; i < IOTA.length; i++)
+            IOTA[i] = i;
+    }
+
+    private VectorKernels() {
+    }
+
+    // Whether the preferred shape is wide enough to be worth it.
+    static boolean usable() {
+        return S != null;
+    }
+
+    // out[off..off + len) += amplitude * sin(2 PI (position + k) * inc); see
+    // Oscillator.sinCycle for the scalar form of the same computation.
+    static void addSines(double[] out, int off, int len, long position, double inc, double amplitude) {
+        DoubleVector iota = DoubleVector.fromArray(D, IOTA, 0);
+        int k = 0;
+        for (int bound = D.loopBound(len); k < bound; k += D.length()) {
+            DoubleVector x = iota.add((double) (position + k)).mul(inc);
+            DoubleVector t = x.sub(x.add(Oscillator.ROUND).sub(Oscillator.ROUND));
+            DoubleVector r = t.blend(DoubleVector.broadcast(D, 0.5).sub(t), t.compare(VectorOperators.GT, 0.25));
+            r = r.blend(DoubleVector.broadcast(D, -0.5).sub(t), t.compare(VectorOperators.LT, -0.25));
+            DoubleVector a = r.mul(Oscillator.TWO_PI);
+            DoubleVector a2 = a.mul(a);
+            DoubleVector poly = a2.mul(Oscillator.S13).add(Oscillator.S11);
+            poly = a2.mul(poly).add(Oscillator.S9);
+            poly = a2.mul(poly).add(Oscillator.S7);
+            poly = a2.mul(poly).add(Oscillator.S5);
+            poly = a2.mul(poly).add(Oscillator.S3);
+            poly = a2.mul(poly).add(1);
+            poly = a.mul(poly);
+            DoubleVector o = DoubleVector.fromArray(D, out, off + k);
+            o.add(poly.mul(amplitude)).intoArray(out, off + k);
+        }
+        for (; k < len; k++)
+            out[off + k] += Oscillator.sinCycle((double) (position + k) * inc) * amplitude;
+    }
+
+    // Same contract as Pcm.encode(double[], ...): clip, scale, truncate and pack as
+    // little-endian 16-bit PCM.
+    static void encode(double[] src, int srcOff, byte[] dst, int dstOff, int len) {
+        int k = 0;
+        for (int bound = D.loopBound(len); k < bound; k += D.length()) {
+            DoubleVector v = DoubleVector.fromArray(D, src, srcOff + k);
+            VectorMask<Double> nan = v.test(VectorOperators.IS_NAN);
+            if (nan.anyTrue()) throw new IllegalArgumentException("sample is NaN");
+            DoubleVector scaled = v.mul(32768.0).min(Short.MAX_VALUE).max(Short.MIN_VALUE);
+            // Going through int is much faster than D2S, which has no direct instruction.
+            IntVector ints = (IntVector) scaled.convertShape(VectorOperators.D2I, I, 0);
+            ShortVector pcm = (ShortVector) ints.convertShape(VectorOperators.I2S, S, 0);
+            pcm.reinterpretAsBytes().intoArray(dst, dstOff + 2 * k);
+        }
+        Pcm.encodeScalar(src, srcOff + k, dst, dstOff + 2 * k, len - k);
+    }
+
+    // acc[p] = sum over k of f[fOff + k] * w[p + k], for p in [0, len); see
+    // Resampler.convolveScalar for the scalar form, which fuses the same multiply-adds
+    // in the same order.
+    static void convolve(double[] w, double[] f, int fOff, int taps, double[] acc, int len) {
+        int p = 0;
+        for (int bound = D.loopBound(len); p < bound; p += D.length()) {
+            DoubleVector sum = DoubleVector.zero(D);
+            for (int k = 0; k < taps; k++)
+                sum = DoubleVector.fromArray(D, w, p + k).fma(DoubleVector.broadcast(D, f[fOff + k]), sum);
+            sum.intoArray(acc, p);
+        }
+        Resampler.convolveScalar(w, f, fOff, taps, acc, p, len);
+    }
+}
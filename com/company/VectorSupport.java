@@ -0,0 +1,38 @@
+package com.company;
+
+/**
+ * Decides once per JVM whether the Java Vector API can be used. Nothing outside this
+ * class touches {@link VectorKernels} unless {@link #ENABLED} is true, so the player still
+ * runs on JVMs started without {@code jdk.incubator.vector}.
+ */
+final class VectorSupport {
+
+    static final boolean ENABLED = detect();
+
+    // The conversions the PCM kernel relies on are only compiled to vector instructions
+    // from JDK 21; on older JVMs the scalar loop is several times faster.
+    static final boolean ENCODE = ENABLED && Runtime.version().feature() >= 21;
+
+    private VectorSupport() {
+    }
+
+    private static boolean detect() {
+        if (!Boolean.parseBoolean(System.getProperty("stdaudio.vector", "true"))) return false;
+        if (!bootModule("jdk.incubator.vector")) return false;
+        try {
+            return VectorKernels.usable();
+        }
+        catch (LinkageError e) {
+            return false;
+        }
+    }
+
+    // ModuleLayer.findModule searches the parent layers with a stream when the module is
+    // missing, and bootstrapping the first lambda of the JVM costs more at startup than
+    // everything else before the first sample; a plain loop over the boot layer does not.
+    private static boolean bootModule(String name) {
+        for (Module module : ModuleLayer.boot().modules())
+            if (module.getName().equals(name)) return true;
+        return false;
+    }
+}
@@ -0,0 +1,510 @@
+package com.company;
+
+import java.util.Arrays;
+
+/**
+ * A polyphonic synthesizer with a fixed number of voices, for notes that overlap and
+ * fade instead of starting and stopping with the block chords of {@link Oscillator}.
+ *
+ * <p>Notes are scheduled by sample timestamp with {@link #noteOn} and {@link #noteOff}
+ * and take effect on exactly that sample of {@link #render}. Each voice runs an ADSR
+ * envelope with linear segments, so notes neither start nor stop abruptly, and keeps its
+ * phase for as long as it sounds: a note-on for a note that is still sounding, even in
+ * its release, carries on in the same voice from its current phase and level instead of
+ * starting over. Changes of loudness are ramped over the attack time for the same
+ * reason.
+ *
+ * <p>Voices are sine waves advanced by rotating a (sin, cos) pair, re-seeded from the
+ * phase accumulator every {@link Oscillator#RESYNC_INTERVAL} samples as in
+ * {@link OscillatorMode#ROTATION}. Optional harmonics are derived from that pair with the
+ * Chebyshev recurrence {@code sin((k + 1)x) = 2 cos(x) sin(kx) - sin((k - 1)x)}, one
+ * multiply-add per harmonic per sample and no further {@code Math.sin} calls; harmonics
+ * at or above the Nyquist frequency are left out.
+ *
+ * <p>When every voice is busy, a note-on steals the quietest releasing voice, or the
+ * oldest voice if none is releasing; its envelope attacks from the level it had, so the
+ * loudness does not jump. Voices, harmonics and the event queue are all allocated up
+ * front: scheduling and rendering allocate nothing, and rendering costs time in
+ * proportion to the voices actually sounding.
+ *
+ * <p>A voice pool is not thread-safe.
+ */
+public final class VoicePool {
+
+    /**
+     * Most harmonics a voice can have, the fundamental included.
+     */
+    public static final int MAX_HARMONICS = 32;
+
+    private static final int ATTACK = 0;
+    private static final int DECAY = 1;
+    private static final int SUSTAIN = 2;
+    private static final int RELEASE = 3;
+
+    private static final int ON = 0;
+    private static final int OFF = 1;
+
+    private final int sampleRate;
+    private long position;                 // Timestamp of the next sample rendered.
+    private long steals;
+
+    // Envelope, in samples, and harmonic amplitudes shared by every voice.
+    private int attack;
+    private int decay;
+    private double sustain = 1;
+    private int release;
+    private final double[] harmonics = new double[MAX_HARMONICS];
+    private int harmonicCount = 1;
+
+    // Voice state, one slot per voice.
+    private final int[] note;              // Caller's id of the note playing.
+    private final long[] started;          // Timestamp of the latest note-on.
+    private final double[] phase;          // Phase, in cycles within [0, 1).
+    private final double[] increment;      // Phase advance per sample, in cycles.
+    private final double[] sin;            // Sine of the current phase.
+    private final double[] cos;            // Cosine of the current phase.
+    private final double[] stepSin;        // Sine of the per-sample angle.
+    private final double[] stepCos;        // Cosine of the per-sample angle.
+    private final int[] sinceResync;       // Samples since sin and cos were recomputed.
+    private final int[] partials;          // Harmonics below the Nyquist frequency.
+    private final int[] stage;
+    private final long[] stageLeft;        // Samples until the next stage; Long.MAX_VALUE while sustaining.
+    private final double[] level;          // Envelope level.
+    private final double[] levelStep;      // Change of the level per sample.
+    private final double[] gain;           // Amplitude of the note.
+    private final double[] gainStep;       // Change of the gain per sample while it ramps.
+    private final int[] gainLeft;          // Samples until the gain reaches its target.
+    private final int[] active;            // Indices of the sounding voices.
+    private int activeCount;
+    private final int[] idle;              // Indices of the silent voices.
+    private int idleCount;
+
+    // Pending events, a circular queue kept in timestamp order.
+    private final long[] eventTime;
+    private final int[] eventKind;
+    private final int[] eventNote;
+    private final double[] eventHz;
+    private final double[] eventAmplitude;
+    private int eventHead;
+    private int eventCount;
+
+    /**
+     * Creates a pool of {@code voices} voices with room for {@code events} pending
+     * note-on and note-off events, a 5 ms attack, no decay, full sustain and a 50 ms
+     * release.
+     *
+     * @param voices     most notes that sound at once.
+     * @param events     most events that may be scheduled ahead of the render position.
+     * @param sampleRate samples per second.
+     * @throws IllegalArgumentException if any argument is not positive.
+     */
+    public VoicePool(int voices, int events, int sampleRate) {
+        if (voices <= 0 || events <= 0) throw new IllegalArgumentException("need at least one voice and one event");
+        if (sampleRate <= 0) throw new IllegalArgumentException("sample rate must be positive");
+        this.sampleRate = sampleRate;
+        note = new int[voices];
+        started = new long[voices];
+        phase = new double[voices];
+        increment = new double[voices];
+        sin = new double[voices];
+        cos = new double[voices];
+        stepSin = new double[voices];
+        stepCos = new double[voices];
+        sinceResync = new int[voices];
+        partials = new int[voices];
+        stage = new int[voices];
+        stageLeft = new long[voices];
+        level = new double[voices];
+        levelStep = new double[voices];
+        gain = new double[voices];
+        gainStep = new double[voices];
+        gainLeft = new int[voices];
+        active = new int[voices];
+        idle = new int[voices];
+        for (int v = 0; v < voices; v++)
+            idle[idleCount++] = voices - 1 - v;
+        eventTime = new long[events];
+        eventKind = new int[events];
+        eventNote = new int[events];
+        eventHz = new double[events];
+        eventAmplitude = new double[events];
+        harmonics[0] = 1;
+        setEnvelope(0.005, 0, 1, 0.05);
+    }
+
+    /**
+     * Sets the envelope of every note played from now on. The level rises linearly to 1
+     * over the attack, falls linearly to the sustain level over the decay, holds until
+     * the note-off and then falls linearly to silence over the release.
+     *
+     * @param attack  seconds from silence to full level.
+     * @param decay   seconds from full level to the sustain level.
+     * @param sustain level held until the note-off, from 0 to 1.
+     * @param release seconds from the sustain level to silence.
+     * @throws IllegalArgumentException if a time is negative or the sustain level is
+     *         outside [0, 1].
+     */
+    public void setEnvelope(double attack, double decay, double sustain, double release) {
+        if (!(attack >= 0 && decay >= 0 && release >= 0))
+            throw new IllegalArgumentException("envelope times must not be negative");
+        if (!(sustain >= 0 && sustain <= 1)) throw new IllegalArgumentException("sustain level must be in [0, 1]");
+        this.attack = (int) Math.round(attack * sampleRate);
+        this.decay = (int) Math.round(decay * sampleRate);
+        this.sustain = sustain;
+        this.release = (int) Math.round(release * sampleRate);
+    }
+
+    /**
+     * Sets the timbre of every voice: {@code amplitudes[k]} is the amplitude of harmonic
+     * {@code k + 1} relative to the note's amplitude, so {@code {1}} is a pure sine.
+     * Keep the absolute values summing to at most 1 for the note's amplitude to remain
+     * its peak. Voices already sounding change timbre at once.
+     *
+     * @param amplitudes the amplitude of each harmonic, the fundamental first.
+     * @throws IllegalArgumentException if there are no amplitudes or more than
+     *         {@link #MAX_HARMONICS}.
+     */
+    public void setHarmonics(double... amplitudes) {
+        if (amplitudes.length == 0 || amplitudes.length > MAX_HARMONICS)
+            throw new IllegalArgumentException("need 1 to " + MAX_HARMONICS + " harmonics");
+        System.arraycopy(amplitudes, 0, harmonics, 0, amplitudes.length);
+        Arrays.fill(harmonics, amplitudes.length, MAX_HARMONICS, 0);
+        harmonicCount = amplitudes.length;
+        for (int a = 0; a < activeCount; a++) {
+            int v = active[a];
+            partials[v] = partials(increment[v]);
+        }
+    }
+
+    /**
+     * Schedules note {@code note} to start at sample {@code at} of the render. Events in
+     * the past take effect on the next sample rendered; events with the same timestamp
+     * take effect in the order they were scheduled.
+     *
+     * @param at        timestamp of the first sample of the note.
+     * @param note      any id for the note, used by {@link #noteOff}; a note-on for a
+     *                  note still sounding continues it in the same voice.
+     * @param hz        frequency of the note.
+     * @param amplitude peak amplitude of the note.
+     * @throws IllegalArgumentException if the frequency is not positive or the
+     *         amplitude is negative.
+     * @throws IllegalStateException if the event queue is full.
+     */
+    public void noteOn(long at, int note, double hz, double amplitude) {
+        if (!(hz > 0)) throw new IllegalArgumentException("frequency must be positive");
+        if (!(amplitude >= 0)) throw new IllegalArgumentException("amplitude must not be negative");
+        schedule(at, ON, note, hz, amplitude);
+    }
+
+    /**
+     * Schedules note {@code note} to be released at sample {@code at} of the render. A
+     * note-off for a note that is not sounding then is ignored.
+     *
+     * @param at   timestamp of the first sample of the release.
+     * @param note the id the note was started with.
+     * @throws IllegalStateException if the event queue is full.
+     */
+    public void noteOff(long at, int note) {
+        schedule(at, OFF, note, 0, 0);
+    }
+
+    // Inserts an event behind every event that is not later, which is one step for
+    // events scheduled in order.
+    private void schedule(long at, int kind, int note, double hz, double amplitude) {
+        int capacity = eventTime.length;
+        if (eventCount == capacity) throw new IllegalStateException("event queue is full");
+        int i = eventCount++;
+        int slot = (eventHead + i) % capacity;
+        while (i > 0) {
+            int previous = (eventHead + i - 1) % capacity;
+            if (eventTime[previous] <= at) break;
+            eventTime[slot] = eventTime[previous];
+            eventKind[slot] = eventKind[previous];
+            eventNote[slot] = eventNote[previous];
+            eventHz[slot] = eventHz[previous];
+            eventAmplitude[slot] = eventAmplitude[previous];
+            slot = previous;
+            i--;
+        }
+        eventTime[slot] = at;
+        eventKind[slot] = kind;
+        eventNote[slot] = note;
+        eventHz[slot] = hz;
+        eventAmplitude[slot] = amplitude;
+    }
+
+    /**
+     * Renders the next {@code len} samples into {@code out}, overwriting it, applying
+     * every event that falls within them on its sample.
+     *
+     * @param out destination array.
+     * @param off index of the first sample to write.
+     * @param len number of samples.
+     */
+    public void render(double[] out, int off, int len) {
+        if (off < 0 || len < 0 || off > out.length - len)
+            throw new IndexOutOfBoundsException("off " + off + ", len " + len + ", length " + out.length);
+        Arrays.fill(out, off, off + len, 0);
+        int done = 0;
+        while (done < len) {
+            while (eventCount > 0 && eventTime[eventHead] <= position) {
+                int e = eventHead;
+                if (eventKind[e] == ON) start(eventNote[e], eventHz[e], eventAmplitude[e]);
+                else release(eventNote[e]);
+                eventHead = (eventHead + 1) % eventTime.length;
+                eventCount--;
+            }
+            int span = len - done;
+            if (eventCount > 0) span = (int) Math.min(span, eventTime[eventHead] - position);
+            for (int a = activeCount - 1; a >= 0; a--) {
+                int v = active[a];
+                if (renderVoice(v, out, off + done, span)) continue;
+                active[a] = active[--activeCount];
+                idle[idleCount++] = v;
+            }
+            done += span;
+            position += span;
+        }
+    }
+
+    // Starts or continues a note in a voice.
+    private void start(int id, double hz, double amplitude) {
+        int v = find(id);
+        if (v < 0) {
+            if (idleCount > 0) {
+                v = idle[--idleCount];
+                active[activeCount++] = v;
+                level[v] = 0;
+            }
+            else v = steal();
+            note[v] = id;
+            started[v] = position;
+            double ratio = hz / sampleRate;
+            increment[v] = ratio - Math.floor(ratio);
+            phase[v] = 0;
+            sin[v] = 0;
+            cos[v] = 1;
+            stepSin[v] = Math.sin(2 * Math.PI * ratio);
+            stepCos[v] = Math.cos(2 * Math.PI * ratio);
+            sinceResync[v] = 0;
+            partials[v] = partials(ratio);
+            gain[v] = amplitude;
+            gainLeft[v] = 0;
+        }
+        else {
+            started[v] = position;
+            rampGain(v, amplitude);
+        }
+        enter(v, ATTACK);
+    }
+
+    // Returns the sounding voice playing note id, or -1.
+    private int find(int id) {
+        for (int a = 0; a < activeCount; a++)
+            if (note[active[a]] == id) return active[a];
+        return -1;
+    }
+
+    // Takes over the quietest releasing voice, or the oldest if none is releasing.
+    private int steal() {
+        int best = -1;
+        for (int a = 0; a < activeCount; a++) {
+            int v = active[a];
+            if (best < 0) best = v;
+            else if (stage[v] == RELEASE && (stage[best] != RELEASE || level[v] < level[best])) best = v;
+            else if (stage[v] != RELEASE && stage[best] != RELEASE && started[v] < started[best]) best = v;
+        }
+        steals++;
+        return best;
+    }
+
+    private void release(int id) {
+        for (int a = 0; a < activeCount; a++) {
+            int v = active[a];
+            if (note[v] == id && stage[v] != RELEASE) enter(v, RELEASE);
+        }
+    }
+
+    // Number of harmonics of a voice at ratio cycles per sample that stay below Nyquist.
+    private int partials(double ratio) {
+        int below = ratio <= 0 ? harmonicCount : (int) Math.ceil(0.5 / ratio) - 1;
+        return Math.max(1, Math.min(harmonicCount, below));
+    }
+
+    // Ramps the gain of a sounding voice to amplitude over the attack time.
+    private void rampGain(int v, double amplitude) {
+        int n = Math.max(1, attack);
+        gainStep[v] = (amplitude - gain[v]) / n;
+        gainLeft[v] = n;
+        if (amplitude == gain[v]) gainLeft[v] = 0;
+    }
+
+    // Sets a voice's envelope going from its current level towards the target of stage s.
+    private void enter(int v, int s) {
+        stage[v] = s;
+        double from = level[v];
+        double to;
+        int samples;
+        switch (s) {
+            case ATTACK:
+                to = 1;
+                samples = (int) Math.ceil(attack * (1 - from));
+                break;
+            case DECAY:
+                to = sustain;
+                samples = decay;
+                break;
+            case SUSTAIN:
+                stageLeft[v] = Long.MAX_VALUE;
+                levelStep[v] = 0;
+                return;
+            default:
+                to = 0;
+                samples = release;
+                break;
+        }
+        if (samples == 0) {
+            level[v] = to;
+            stageLeft[v] = 0;
+            levelStep[v] = 0;
+        }
+        else {
+            stageLeft[v] = samples;
+            levelStep[v] = (to - from) / samples;
+        }
+    }
+
+    // Mixes span samples of voice v into out[at..], moving through envelope stages as
+    // they end. Returns false once the voice has fallen silent after its release.
+    private boolean renderVoice(int v, double[] out, int at, int span) {
+        while (true) {
+            while (stageLeft[v] == 0) {
+                switch (stage[v]) {
+                    case ATTACK: level[v] = 1; enter(v, DECAY); break;
+                    case DECAY: level[v] = sustain; enter(v, SUSTAIN); break;
+                    default: level[v] = 0; return false;
+                }
+            }
+            if (span == 0) return true;
+            int n = (int) Math.min(span, stageLeft[v]);
+            if (gainLeft[v] > 0) n = Math.min(n, gainLeft[v]);
+            n = Math.min(n, Oscillator.RESYNC_INTERVAL - sinceResync[v]);    // mix() resyncs at its end.
+            mix(v, out, at, n);
+            at += n;
+            span -= n;
+            if (stageLeft[v] != Long.MAX_VALUE) stageLeft[v] -= n;
+            if (gainLeft[v] > 0) gainLeft[v] -= n;
+        }
+    }
+
+    // The inner loop: n samples of one voice with a straight-line level and gain.
+    private void mix(int v, double[] out, int at, int n) {
+        double s = sin[v];
+        double c = cos[v];
+        double ss = stepSin[v];
+        double sc = stepCos[v];
+        double env = level[v];
+        double envStep = levelStep[v];
+        double g = gain[v];
+        double gStep = gainLeft[v] > 0 ? gainStep[v] : 0;
+        int k = partials[v];
+        double[] h = harmonics;
+        double h0 = h[0];
+        if (k == 1) {
+            for (int i = at; i < at + n; i++) {
+                out[i] += env * g * h0 * s;
+                double next = s * sc + c * ss;
+                c = c * sc - s * ss;
+                s = next;
+                env += envStep;
+                g += gStep;
+            }
+        }
+        else {
+            for (int i = at; i < at + n; i++) {
+                double twoCos = 2 * c;
+                double previous = 0;
+                double current = s;
+                double sum = h0 * s;
+                for (int j = 1; j < k; j++) {
+                    double next = twoCos * current - previous;
+                    sum += h[j] * next;
+                    previous = current;
+                    current = next;
+                }
+                out[i] += env * g * sum;
+                double next = s * sc + c * ss;
+                c = c * sc - s * ss;
+                s = next;
+                env += envStep;
+                g += gStep;
+            }
+        }
+        level[v] = env;
+        gain[v] = g;
+        double p = phase[v] + n * increment[v];
+        phase[v] = p - Math.floor(p);
+        sinceResync[v] += n;
+        if (sinceResync[v] >= Oscillator.RESYNC_INTERVAL) {
+            s = Math.sin(2 * Math.PI * phase[v]);
+            c = Math.cos(2 * Math.PI * phase[v]);
+            sinceResync[v] = 0;
+        }
+        sin[v] = s;
+        cos[v] = c;
+    }
+
+    /**
+     * Returns the timestamp of the next sample {@link #render} will produce.
+     *
+     * @return samples rendered so far.
+     */
+    public long position() {
+        return position;
+    }
+
+    /**
+     * Returns the sample rate the pool renders at.
+     *
+     * @return samples per second.
+     */
+    public int sampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Returns how many voices are sounding, including those in their release.
+     *
+     * @return the active voice count.
+     */
+    public int activeVoices() {
+        return activeCount;
+    }
+
+    /**
+     * Returns how many events can be pending at once.
+     *
+     * @return the size of the event queue.
+     */
+    public int eventCapacity() {
+        return eventTime.length;
+    }
+
+    /**
+     * Returns how many events are waiting for the render to reach them.
+     *
+     * @return the pending event count.
+     */
+    public int pendingEvents() {
+        return eventCount;
+    }
+
+    /**
+     * Returns how many note-ons had to take over a voice that was still sounding.
+     *
+     * @return the steal count.
+     */
+    public long steals() {
+        return steals;
+    }
+}
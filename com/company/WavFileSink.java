@@ -0,0 +1,189 @@
+package com.company;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Streams audio into a PCM WAV file. A placeholder header is written up front and
+ * the RIFF and data sizes are patched in when the sink is closed, so the file can be
+ * written in one pass at whatever speed the renderer manages.
+ *
+ * <p>Mono and stereo audio of up to 16 bits gets the canonical {@code WAVE_FORMAT_PCM}
+ * header. Wider samples or more channels get a {@code WAVE_FORMAT_EXTENSIBLE} header,
+ * which is what the format requires for them.
+ */
+public final class WavFileSink implements AudioSink {
+
+    /**
+     * Size of the canonical 44-byte PCM WAV header, used for mono and stereo audio of up
+     * to 16 bits.
+     */
+    public static final int HEADER_SIZE = 44;
+
+    private static final int EXTENSIBLE_HEADER_SIZE = 68;
+    private static final short WAVE_FORMAT_PCM = 1;
+    private static final short WAVE_FORMAT_EXTENSIBLE = (short) 0xFFFE;
+    // KSDATAFORMAT_SUBTYPE_PCM, 00000001-0000-0010-8000-00aa00389b71, as stored.
+    private static final byte[] SUBTYPE_PCM = {
+            0x01, 0x00, 0x00, 0x00, 0x00, 0x00, 0x10, 0x00,
+            (byte) 0x80, 0x00, 0x00, (byte) 0xAA, 0x00, 0x38, (byte) 0x9B, 0x71,
+    };
+
+    private final FileChannel channel;
+    private final AudioFormat format;
+    private final int headerSize;
+    private long dataBytes;    // Number of PCM bytes written after the header.
+
+    /**
+     * Creates or truncates {@code path} and writes a WAV header for {@code format}.
+     *
+     * @param  path   the file to write.
+     * @param  format the format of the audio that will be written: unsigned 8-bit PCM,
+     *                or signed, little-endian PCM of more than 8 bits.
+     * @throws IllegalArgumentException if the format is not one a WAV file holds.
+     * @throws UncheckedIOException if the file cannot be opened.
+     */
+    public WavFileSink(Path path, AudioFormat format) {
+        int bits = format.getSampleSizeInBits();
+        AudioFormat.Encoding encoding = bits == 8 ? AudioFormat.Encoding.PCM_UNSIGNED : AudioFormat.Encoding.PCM_SIGNED;
+        if (!format.getEncoding().equals(encoding) || bits % 8 != 0 || bits > 32)
+            throw new IllegalArgumentException("WAV files hold unsigned 8-bit or signed 16 to 32-bit PCM");
+        if (format.isBigEndian() && bits > 8)
+            throw new IllegalArgumentException("WAV files hold little-endian samples");
+        this.format = format;
+        this.headerSize = headerSize(format);
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            writeFully(header(format, 0), 0);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns the size of the header {@link #header} builds for {@code format}:
+     * {@link #HEADER_SIZE} for mono or stereo audio of up to 16 bits, and 68 bytes, with
+     * a {@code WAVE_FORMAT_EXTENSIBLE} fmt chunk, otherwise.
+     *
+     * @param  format the format of the audio.
+     * @return the header size in bytes.
+     */
+    public static int headerSize(AudioFormat format) {
+        return extensible(format) ? EXTENSIBLE_HEADER_SIZE : HEADER_SIZE;
+    }
+
+    private static boolean extensible(AudioFormat format) {
+        return format.getChannels() > 2 || format.getSampleSizeInBits() > 16;
+    }
+
+    /**
+     * Builds a PCM WAV header for {@code dataBytes} bytes of audio in {@code format}, of
+     * {@link #headerSize} bytes. Sizes that do not fit in 32 bits are written as
+     * {@code 0xFFFFFFFF}, which is what streaming readers expect when the length is
+     * unknown.
+     *
+     * @param  format    the format of the audio.
+     * @param  dataBytes number of PCM bytes that follow the header.
+     * @return the header, ready to be read.
+     */
+    public static ByteBuffer header(AudioFormat format, long dataBytes) {
+        int channels = format.getChannels();
+        int bits = format.getSampleSizeInBits();
+        int rate = (int) format.getSampleRate();
+        int blockAlign = channels * ((bits + 7) / 8);
+        boolean extensible = extensible(format);
+        int size = headerSize(format);
+        ByteBuffer header = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        header.put((byte) 'R').put((byte) 'I').put((byte) 'F').put((byte) 'F');
+        header.putInt((int) Math.min(0xFFFFFFFFL, dataBytes + size - 8));
+        header.put((byte) 'W').put((byte) 'A').put((byte) 'V').put((byte) 'E');
+        header.put((byte) 'f').put((byte) 'm').put((byte) 't').put((byte) ' ');
+        header.putInt(extensible ? 40 : 16);     // Size of the fmt chunk.
+        header.putShort(extensible ? WAVE_FORMAT_EXTENSIBLE : WAVE_FORMAT_PCM);
+        header.putShort((short) channels);
+        header.putInt(rate);
+        header.putInt(rate * blockAlign);        // Byte rate.
+        header.putShort((short) blockAlign);
+        header.putShort((short) bits);
+        if (extensible) {
+            header.putShort((short) 22);         // Size of the extension.
+            header.putShort((short) bits);       // Valid bits per sample.
+            header.putInt(0);                    // Channel mask: no speaker positions assigned.
+            header.put(SUBTYPE_PCM);
+        }
+        header.put((byte) 'd').put((byte) 'a').put((byte) 't').put((byte) 'a');
+        header.putInt((int) Math.min(0xFFFFFFFFL, dataBytes));
+        header.flip();
+        return header;
+    }
+
+    /**
+     * Returns the format this sink was opened with.
+     *
+     * @return the audio format.
+     */
+    public AudioFormat format() {
+        return format;
+    }
+
+    @Override
+    public void write(byte[] bytes, int off, int len) {
+        try {
+            writeFully(ByteBuffer.wrap(bytes, off, len), headerSize + dataBytes);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        dataBytes += len;
+    }
+
+    // Mapped cache entries go to the file channel as they are.
+    @Override
+    public void write(ByteBuffer bytes) {
+        int len = bytes.remaining();
+        try {
+            writeFully(bytes, headerSize + dataBytes);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        dataBytes += len;
+    }
+
+    @Override
+    public void drain() {
+        try {
+            channel.force(false);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Patches the header with the final sizes and closes the file.
+    @Override
+    public void close() {
+        if (!channel.isOpen()) return;
+        try {
+            writeFully(header(format, dataBytes), 0);
+            channel.truncate(headerSize + dataBytes);
+            channel.close();
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeFully(ByteBuffer bytes, long position) throws IOException {
+        while (bytes.hasRemaining())
+            position += channel.write(bytes, position);
+    }
+}
@@ -0,0 +1,144 @@
+package com.company;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Edits the anthem a bar at a time and checks that each incremental render leaves
+ * exactly the file a full render of the edited score writes, whichever bars it reused,
+ * moved or rendered again.
+ */
+class IncrementalRendererTest {
+
+    private static final int RATE = 22050;
+    private static final OscillatorMode MODE = OscillatorMode.WAVETABLE;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void unchangedScoreRendersNothing() throws IOException {
+        Path wav = directory.resolve("out.wav");
+        Score score = Score.parse(join(anthemBars()));
+        IncrementalRenderer.Report first = render(score, wav);
+        assertEquals(score.bars(), first.rendered());
+        IncrementalRenderer.Report second = render(score, wav);
+        assertEquals(0, second.rendered());
+        assertEquals(0, second.moved());
+    }
+
+    @Test
+    void editedBarIsRenderedInPlace() throws IOException {
+        Path wav = directory.resolve("out.wav");
+        List<String> bars = anthemBars();
+        render(Score.parse(join(bars)), wav);
+        bars.set(5, bars.get(5).replace("Eb3 C4 C5 ", "Eb3 C4 C6 "));
+        IncrementalRenderer.Report report = render(Score.parse(join(bars)), wav);
+        assertEquals(1, report.rendered());
+        assertEquals(0, report.moved());
+    }
+
+    @Test
+    void insertedBarMovesTheBarsAfterIt() throws IOException {
+        Path wav = directory.resolve("out.wav");
+        List<String> bars = anthemBars();
+        render(Score.parse(join(bars)), wav);
+        // Shorter than the bars after it, so each moves onto part of its own old bytes.
+        bars.add(3, "bar inserted\nC4 E4 G4                 eighth           mf\n\n");
+        IncrementalRenderer.Report report = render(Score.parse(join(bars)), wav);
+        assertTrue(report.rendered() < report.bars() / 2, report.toString());
+        assertTrue(report.moved() > 0, report.toString());
+    }
+
+    @Test
+    void deletedBarMovesTheBarsAfterIt() throws IOException {
+        Path wav = directory.resolve("out.wav");
+        List<String> bars = anthemBars();
+        render(Score.parse(join(bars)), wav);
+        bars.remove(4);
+        IncrementalRenderer.Report report = render(Score.parse(join(bars)), wav);
+        assertTrue(report.rendered() < report.bars() / 2, report.toString());
+        assertTrue(report.moved() > 0, report.toString());
+    }
+
+    @Test
+    void barThatChangesLengthMovesTheBarsAfterIt() throws IOException {
+        Path wav = directory.resolve("out.wav");
+        List<String> bars = anthemBars();
+        render(Score.parse(join(bars)), wav);
+        bars.set(2, bars.get(2).replace("dottedEighth", "sixteenth"));
+        render(Score.parse(join(bars)), wav);
+        bars.set(8, bars.get(8).replace("quarter", "dottedQuarter"));
+        IncrementalRenderer.Report report = render(Score.parse(join(bars)), wav);
+        assertTrue(report.moved() > 0, report.toString());
+    }
+
+    @Test
+    void fileRewrittenByOtherMeansIsRenderedAgain() throws IOException {
+        Path wav = directory.resolve("out.wav");
+        Score score = Score.parse(join(anthemBars()));
+        render(score, wav);
+        byte[] other = new byte[(int) Files.size(wav)];
+        Files.write(wav, other);
+        // Two writes can share a timestamp on a coarse clock; make sure these do not.
+        Files.setLastModifiedTime(wav, FileTime.fromMillis(Files.getLastModifiedTime(wav).toMillis() + 1000));
+        IncrementalRenderer.Report report = render(score, wav);
+        assertEquals(score.bars(), report.rendered());
+    }
+
+    @Test
+    void forgottenManifestMeansAFullRender() throws IOException {
+        Path wav = directory.resolve("out.wav");
+        Score score = Score.parse(join(anthemBars()));
+        render(score, wav);
+        IncrementalRenderer.forget(wav);
+        assertEquals(score.bars(), render(score, wav).rendered());
+    }
+
+    // Renders incrementally and checks the file against a full render of the same score.
+    private IncrementalRenderer.Report render(Score score, Path wav) throws IOException {
+        IncrementalRenderer.Report report = IncrementalRenderer.render(score, wav, MODE, RATE);
+        Path full = directory.resolve("full.wav");
+        AudioSession session = new AudioSession(new WavFileSink(full, AudioSession.pcmFormat(RATE, 16, 1)),
+                                                new PlaybackMetrics(), RATE);
+        session.setOscillatorMode(MODE);
+        session.play(score.compile(RATE));
+        session.close();
+        assertArrayEquals(Files.readAllBytes(full), Files.readAllBytes(wav), report.toString());
+        return report;
+    }
+
+    // The anthem split before every "bar" line; the first element is the preamble.
+    private static List<String> anthemBars() throws IOException {
+        String text;
+        try (InputStream in = Score.class.getResourceAsStream("anthem.score")) {
+            text = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        List<String> bars = new ArrayList<>();
+        int from = 0;
+        int at;
+        while ((at = text.indexOf("\nbar ", from)) >= 0) {
+            bars.add(text.substring(from, at + 1));
+            from = at + 1;
+        }
+        bars.add(text.substring(from));
+        return bars;
+    }
+
+    private static String join(List<String> bars) {
+        return String.join("", bars);
+    }
+}
@@ -0,0 +1,140 @@
+package com.company;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pins the output of the oscillators to the original player, which summed
+ * {@code Math.sin} per voice per sample and converted each sample on its own: SINE must
+ * reproduce it byte for byte and WAVETABLE to within one least significant bit.
+ */
+class OscillatorRegressionTest {
+
+    private static final double[][] CHORDS = {
+            {311.13, 622.25, 783.99, 932.33, 1244.51},
+            {0},
+            {466.16},
+            {196.00, 293.66, 392.00, 466.16, 587.33},
+            {174.61, 207.65, 261.63, 349.23},
+    };
+    private static final double[] DURATIONS = {0.75, 0.125, 0.0625, 1.0 / 3};
+    private static final double[] AMPLITUDES = {0.9, 0.5, 0.25};
+
+    @Test
+    void sineChordsMatchTheBaselineExactly() {
+        assertArrayEquals(baselineChords(), chords(OscillatorMode.SINE));
+    }
+
+    @Test
+    void wavetableChordsStayWithinOneBitOfTheBaseline() {
+        assertWithinOneBit(baselineChords(), chords(OscillatorMode.WAVETABLE));
+    }
+
+    @Test
+    void sineAnthemMatchesTheBaselineExactly() {
+        CompiledScore anthem = Score.loadResource("anthem.score").compile(StdAudio.SAMPLE_RATE);
+        assertArrayEquals(baselineScore(anthem), score(anthem, OscillatorMode.SINE));
+    }
+
+    @Test
+    void wavetableAnthemStaysWithinOneBitOfTheBaseline() {
+        CompiledScore anthem = Score.loadResource("anthem.score").compile(StdAudio.SAMPLE_RATE);
+        assertWithinOneBit(baselineScore(anthem), score(anthem, OscillatorMode.WAVETABLE));
+    }
+
+    private static byte[] chords(OscillatorMode mode) {
+        Capture capture = new Capture();
+        AudioSession session = new AudioSession(capture);
+        session.setOscillatorMode(mode);
+        for (double[] hzs : CHORDS)
+            for (double duration : DURATIONS)
+                for (double amplitude : AMPLITUDES)
+                    session.multiplePlay(hzs, duration, amplitude);
+        session.close();
+        return capture.bytes();
+    }
+
+    private static byte[] score(CompiledScore score, OscillatorMode mode) {
+        Capture capture = new Capture();
+        AudioSession session = new AudioSession(capture);
+        session.setOscillatorMode(mode);
+        session.play(score);
+        session.close();
+        return capture.bytes();
+    }
+
+    // The original multiplePlay: N + 1 samples of a sum of sines, converted one by one.
+    private static byte[] baselineChords() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (double[] hzs : CHORDS)
+            for (double duration : DURATIONS)
+                for (double amplitude : AMPLITUDES) {
+                    int n = (int) (StdAudio.SAMPLE_RATE * duration);
+                    baselineChord(out, hzs, 0, hzs.length, n + 1, amplitude / hzs.length);
+                }
+        return out.toByteArray();
+    }
+
+    private static byte[] baselineScore(CompiledScore score) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Score source = score.score();
+        for (int n = 0; n < score.notes(); n++) {
+            int first = source.voiceOffset(n);
+            baselineChord(out, source.frequencies(), first, source.voiceOffset(n + 1) - first,
+                          score.length(n), score.voiceAmplitude(n));
+        }
+        return out.toByteArray();
+    }
+
+    private static void baselineChord(ByteArrayOutputStream out, double[] hzs, int off, int count, int length,
+                                      double amplitude) {
+        for (int i = 0; i < length; i++) {
+            double sum = 0;
+            for (int v = off; v < off + count; v++)
+                sum += amplitude * Math.sin(2 * Math.PI * i * hzs[v] / StdAudio.SAMPLE_RATE);
+            if (sum < -1.0) sum = -1.0;
+            if (sum > +1.0) sum = +1.0;
+            short s = (short) (32768 * sum);
+            if (sum == 1.0) s = Short.MAX_VALUE;
+            out.write((byte) s);
+            out.write((byte) (s >> 8));
+        }
+    }
+
+    private static void assertWithinOneBit(byte[] expected, byte[] actual) {
+        assertEquals(expected.length, actual.length, "length");
+        for (int i = 0; i < expected.length; i += 2) {
+            int e = (short) ((expected[i] & 0xFF) | expected[i + 1] << 8);
+            int a = (short) ((actual[i] & 0xFF) | actual[i + 1] << 8);
+            int sample = i / 2;
+            assertTrue(Math.abs(e - a) <= 1, () -> "sample " + sample + ": expected " + e + ", got " + a);
+        }
+    }
+
+    // Keeps everything written to it.
+    private static final class Capture implements AudioSink {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        @Override
+        public void write(byte[] bytes, int off, int len) {
+            out.write(bytes, off, len);
+        }
+
+        @Override
+        public void drain() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        byte[] bytes() {
+            return out.toByteArray();
+        }
+    }
+}
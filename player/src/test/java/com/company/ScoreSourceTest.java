@@ -0,0 +1,128 @@
+package com.company;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.stream.DoubleStream;
+import java.util.stream.StreamSupport;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that seeking and splitting a {@link ScoreSource} never changes its samples:
+ * wherever a read starts or the piece is cut, the result lines up with one read from
+ * the start.
+ */
+class ScoreSourceTest {
+
+    private static final CompiledScore ANTHEM = Score.loadResource("anthem.score").compile(8000);
+
+    @Test
+    void oddReadsAcrossChordBoundariesMatchOneRead() {
+        double[] whole = readAll(new ScoreSource(ANTHEM, OscillatorMode.WAVETABLE), 1 << 20);
+        assertEquals(ANTHEM.totalSamples(), whole.length);
+        assertArrayEquals(whole, readAll(new ScoreSource(ANTHEM, OscillatorMode.WAVETABLE), 37));
+    }
+
+    @Test
+    void seekMatchesReadingThroughInExactModes() {
+        for (OscillatorMode mode : new OscillatorMode[] {OscillatorMode.SINE, OscillatorMode.POLYNOMIAL}) {
+            double[] whole = readAll(new ScoreSource(ANTHEM, mode), 1000);
+            for (long sample : seekTargets()) {
+                ScoreSource source = new ScoreSource(ANTHEM, mode);
+                source.seek(sample);
+                assertEquals(sample, source.position());
+                assertArrayEquals(Arrays.copyOfRange(whole, (int) sample, whole.length), readAll(source, 1000),
+                                  mode + " from " + sample);
+            }
+        }
+    }
+
+    @Test
+    void seekStaysWithinTheErrorBoundInPhaseModes() {
+        for (OscillatorMode mode : new OscillatorMode[] {OscillatorMode.WAVETABLE, OscillatorMode.ROTATION}) {
+            double[] whole = readAll(new ScoreSource(ANTHEM, mode), 1000);
+            for (long sample : seekTargets()) {
+                ScoreSource source = new ScoreSource(ANTHEM, mode);
+                source.seek(sample);
+                double[] rest = readAll(source, 1000);
+                assertEquals(whole.length - sample, rest.length);
+                for (int i = 0; i < rest.length; i++)
+                    assertEquals(whole[(int) sample + i], rest[i], 2 * mode.errorBound(),
+                                 mode + " from " + sample + ", sample " + i);
+            }
+        }
+    }
+
+    @Test
+    void seekToTheEndReadsNothing() {
+        ScoreSource source = new ScoreSource(ANTHEM, OscillatorMode.SINE);
+        source.seek(source.length());
+        assertEquals(-1, source.read(new double[16], 0, 16));
+        assertThrows(IllegalArgumentException.class, () -> source.seek(source.length() + 1));
+        assertThrows(IllegalArgumentException.class, () -> source.seek(-1));
+    }
+
+    @Test
+    void splitHalvesConcatenateToTheUnsplitStream() {
+        ScoreSource source = new ScoreSource(ANTHEM, OscillatorMode.WAVETABLE);
+        double[] whole = source.stream().toArray();
+        Spliterator.OfDouble suffix = source.spliterator();
+        Spliterator.OfDouble prefix = suffix.trySplit();
+        assertNotNull(prefix);
+        assertTrue(isEventStart(prefix.estimateSize()), "split at sample " + prefix.estimateSize());
+        assertArrayEquals(whole, DoubleStream.concat(StreamSupport.doubleStream(prefix, false),
+                                                     StreamSupport.doubleStream(suffix, false)).toArray());
+    }
+
+    @Test
+    void splitsOfAPositionedSourceConcatenateToItsRemainder() {
+        ScoreSource source = new ScoreSource(ANTHEM, OscillatorMode.WAVETABLE);
+        long from = ANTHEM.start(5) + 123;
+        source.seek(from);
+        double[] rest = source.stream().toArray();
+        assertEquals(ANTHEM.totalSamples() - from, rest.length);
+        assertArrayEquals(rest, concat(source.spliterator(), 6).toArray());
+    }
+
+    @Test
+    void parallelStreamMatchesSequentialStream() {
+        ScoreSource source = new ScoreSource(ANTHEM, OscillatorMode.ROTATION);
+        assertArrayEquals(source.stream().toArray(), source.stream().parallel().toArray());
+    }
+
+    // Splits recursively, depth times, and streams the pieces back in order.
+    private static DoubleStream concat(Spliterator.OfDouble samples, int depth) {
+        Spliterator.OfDouble prefix = depth == 0 ? null : samples.trySplit();
+        if (prefix == null) return StreamSupport.doubleStream(samples, false);
+        return DoubleStream.concat(concat(prefix, depth - 1), concat(samples, depth - 1));
+    }
+
+    private static boolean isEventStart(long sample) {
+        for (int n = 0; n < ANTHEM.notes(); n++)
+            if (ANTHEM.start(n) == sample) return true;
+        return false;
+    }
+
+    // Sample positions on, next to and between event boundaries.
+    private static long[] seekTargets() {
+        int n = ANTHEM.notes() / 2;
+        return new long[] {0, 1, ANTHEM.start(n) - 1, ANTHEM.start(n), ANTHEM.start(n) + 1,
+                           ANTHEM.start(n) + ANTHEM.length(n) / 2, ANTHEM.totalSamples() - 1};
+    }
+
+    private static double[] readAll(ScoreSource source, int blockSize) {
+        double[] out = new double[(int) (source.length() - source.position())];
+        int done = 0;
+        int n;
+        while ((n = source.read(out, done, Math.min(blockSize, out.length - done))) > 0)
+            done += n;
+        assertEquals(out.length, done);
+        return out;
+    }
+}
@@ -0,0 +1,128 @@
+package com.company;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks the voice allocation of {@link VoicePool}: which voice a note-on takes when
+ * every voice is busy, that a note-on for a sounding note continues it, and that a
+ * released voice fades linearly and frees itself. Envelopes without attack or decay make
+ * the expected output a plain sum of sines.
+ */
+class VoicePoolTest {
+
+    private static final int RATE = 8000;
+    private static final int RELEASE = 800;              // Samples; 0.1 s at RATE.
+    private static final double TOLERANCE = 1e-9;
+
+    @Test
+    void oneNoteIsASine() {
+        VoicePool pool = pool(1);
+        pool.noteOn(0, 1, 440, 0.5);
+        double[] out = render(pool, 5000);
+        for (int i = 0; i < out.length; i++)
+            assertEquals(0.5 * sine(440, i), out[i], TOLERANCE, "sample " + i);
+    }
+
+    @Test
+    void fullPoolStealsTheOldestVoice() {
+        VoicePool pool = pool(2);
+        pool.noteOn(0, 1, 220, 0.3);
+        pool.noteOn(100, 2, 330, 0.3);
+        pool.noteOn(200, 3, 495, 0.3);
+        double[] out = render(pool, 3000);
+        assertEquals(1, pool.steals());
+        for (int i = 200; i < out.length; i++)
+            assertEquals(0.3 * sine(330, i - 100) + 0.3 * sine(495, i - 200), out[i], TOLERANCE, "sample " + i);
+    }
+
+    @Test
+    void fullPoolStealsAReleasingVoiceBeforeTheOldest() {
+        VoicePool pool = pool(2);
+        pool.noteOn(0, 1, 220, 0.3);
+        pool.noteOn(100, 2, 330, 0.3);
+        pool.noteOff(200, 2);
+        pool.noteOn(300, 3, 495, 0.3);
+        double[] out = render(pool, 3000);
+        assertEquals(1, pool.steals());
+        for (int i = 300; i < out.length; i++)
+            assertEquals(0.3 * sine(220, i) + 0.3 * sine(495, i - 300), out[i], TOLERANCE, "sample " + i);
+    }
+
+    @Test
+    void fullPoolStealsTheQuietestReleasingVoice() {
+        VoicePool pool = pool(3);
+        pool.noteOn(0, 1, 220, 0.2);
+        pool.noteOn(0, 2, 330, 0.2);
+        pool.noteOn(0, 3, 440, 0.2);
+        pool.noteOff(100, 2);       // Released first, so quieter by the time of the steal.
+        pool.noteOff(200, 1);
+        pool.noteOn(300, 4, 550, 0.2);
+        double[] out = render(pool, 900);
+        assertEquals(1, pool.steals());
+        for (int i = 300; i < out.length; i++) {
+            double released = i < 200 + RELEASE ? 1 - (double) (i - 200) / RELEASE : 0;
+            double expected = 0.2 * released * sine(220, i) + 0.2 * sine(440, i) + 0.2 * sine(550, i - 300);
+            assertEquals(expected, out[i], TOLERANCE, "sample " + i);
+        }
+    }
+
+    @Test
+    void noteOnForASoundingNoteContinuesItsPhaseInTheSameVoice() {
+        VoicePool pool = pool(2);
+        pool.noteOn(0, 1, 440, 0.5);
+        pool.noteOff(1000, 1);
+        pool.noteOn(1300, 1, 440, 0.5);
+        double[] out = render(pool, 4000);
+        assertEquals(1, pool.activeVoices());
+        assertEquals(0, pool.steals());
+        for (int i = 0; i < out.length; i++) {
+            double level = i >= 1000 && i < 1300 ? 1 - (double) (i - 1000) / RELEASE : 1;
+            assertEquals(0.5 * level * sine(440, i), out[i], TOLERANCE, "sample " + i);
+        }
+    }
+
+    @Test
+    void releaseFadesLinearlyAndFreesTheVoice() {
+        VoicePool pool = pool(1);
+        pool.noteOn(0, 1, 440, 0.5);
+        pool.noteOff(500, 1);
+        pool.noteOff(600, 7);       // Not sounding: ignored.
+        double[] out = render(pool, 500 + RELEASE + 100);
+        for (int i = 0; i < out.length; i++) {
+            double level = i < 500 ? 1 : Math.max(0, 1 - (double) (i - 500) / RELEASE);
+            assertEquals(0.5 * level * sine(440, i), out[i], TOLERANCE, "sample " + i);
+        }
+        assertEquals(0, pool.activeVoices());
+    }
+
+    @Test
+    void fullEventQueueIsRejected() {
+        VoicePool pool = new VoicePool(1, 2, RATE);
+        pool.noteOn(0, 1, 440, 0.5);
+        pool.noteOff(10, 1);
+        assertThrows(IllegalStateException.class, () -> pool.noteOn(20, 1, 440, 0.5));
+        assertEquals(2, pool.pendingEvents());
+    }
+
+    // A pool whose notes start at full level and release over RELEASE samples.
+    private static VoicePool pool(int voices) {
+        VoicePool pool = new VoicePool(voices, 16, RATE);
+        pool.setEnvelope(0, 0, 1, (double) RELEASE / RATE);
+        return pool;
+    }
+
+    // Renders in blocks that do not line up with the events.
+    private static double[] render(VoicePool pool, int samples) {
+        double[] out = new double[samples];
+        for (int at = 0; at < samples; at += 257)
+            pool.render(out, at, Math.min(257, samples - at));
+        return out;
+    }
+
+    private static double sine(double hz, int sample) {
+        return Math.sin(2 * Math.PI * hz * sample / RATE);
+    }
+}